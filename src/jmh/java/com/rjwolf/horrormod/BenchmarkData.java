@@ -0,0 +1,53 @@
+package com.rjwolf.horrormod;
+
+import java.util.Random;
+
+// Deterministic synthetic players for the benchmarks. Only uses the String-keyed recorders,
+// so nothing here needs Minecraft's registries to be bootstrapped.
+final class BenchmarkData {
+    private static final String[] ENTITIES = {
+        "minecraft:zombie", "minecraft:skeleton", "minecraft:creeper", "minecraft:enderman", "othermod:ghoul"
+    };
+    private static final String[] BIOMES = {
+        "minecraft:deep_dark", "minecraft:swamp", "minecraft:plains", "othermod:ashlands"
+    };
+    private static final String[] BLOCKS = {
+        "minecraft:lava", "minecraft:cobweb", "othermod:bone_pile"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static PlayerBehaviorData player(long seed) {
+        Random random = new Random(seed);
+        PlayerBehaviorData data = new PlayerBehaviorData();
+        for (int i = 0; i < 40; i++) {
+            data.recordEntityReaction(ENTITIES[random.nextInt(ENTITIES.length)], random.nextDouble(), random.nextBoolean());
+            data.recordBiomePresence(BIOMES[random.nextInt(BIOMES.length)], random.nextInt(200));
+            if (random.nextInt(4) == 0) {
+                data.recordBlockAvoidance(BLOCKS[random.nextInt(BLOCKS.length)]);
+            }
+            if (random.nextInt(8) == 0) {
+                data.recordCombatEngagement();
+            }
+        }
+        double[] label = new double[AIFearLearner.FEAR_CATEGORIES];
+        label[random.nextInt(label.length)] = 1.0;
+        data.setFearLabel(label);
+        return data;
+    }
+
+    static PlayerBehaviorData[] players(int count) {
+        PlayerBehaviorData[] players = new PlayerBehaviorData[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = player(i);
+        }
+        return players;
+    }
+
+    static AIFearLearner learner() {
+        AIFearLearner learner = new AIFearLearner();
+        learner.initialize();
+        return learner;
+    }
+}
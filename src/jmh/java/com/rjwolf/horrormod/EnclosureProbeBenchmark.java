@@ -0,0 +1,87 @@
+package com.rjwolf.horrormod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// isPlayerEnclosed-style probes against a stub world: the original 27-block scan, a warm
+// EnvironmentProbeCache, and a cache whose entry was just invalidated by a block change.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnclosureProbeBenchmark {
+    private static final int POSITIONS = 256;
+
+    private final StubSampler sampler = new StubSampler();
+    private final int[] xs = new int[POSITIONS];
+    private final int[] ys = new int[POSITIONS];
+    private final int[] zs = new int[POSITIONS];
+    private EnvironmentProbeCache cache;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cache = new EnvironmentProbeCache(Long.MAX_VALUE);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = (i * 37) % 64 - 32;
+            ys[i] = 20 + (i * 11) % 40;
+            zs[i] = (i * 53) % 64 - 32;
+            cache.getEnclosureScore(sampler, xs[i], ys[i], zs[i]);
+        }
+    }
+
+    @Benchmark
+    public int uncachedScan() {
+        int i = advance();
+        int score = 0;
+        for (int dy = 0; dy <= 2; dy++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (sampler.isSolid(xs[i] + dx, ys[i] + dy, zs[i] + dz)) {
+                        score++;
+                    }
+                }
+            }
+        }
+        return score;
+    }
+
+    @Benchmark
+    public int cachedScore() {
+        int i = advance();
+        return cache.getEnclosureScore(sampler, xs[i], ys[i], zs[i]);
+    }
+
+    @Benchmark
+    public int afterBlockChange() {
+        int i = advance();
+        cache.invalidateBlock(xs[i], ys[i] + 1, zs[i]);
+        return cache.getEnclosureScore(sampler, xs[i], ys[i], zs[i]);
+    }
+
+    private int advance() {
+        int i = next;
+        next = (i + 1) % POSITIONS;
+        return i;
+    }
+
+    // Cave-like terrain from a cheap hash; the cost of a real Level lookup is not modelled
+    private static final class StubSampler implements EnvironmentProbeCache.BlockSampler {
+        @Override
+        public boolean isSolid(int x, int y, int z) {
+            int h = x * 73856093 ^ y * 19349663 ^ z * 83492791;
+            return (h & 3) != 0;
+        }
+
+        @Override
+        public int getLightEmission(int x, int y, int z) {
+            return (x ^ y ^ z) % 31 == 0 ? 15 : 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.rjwolf.horrormod;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FearProfileBenchmark {
+    private float[] levels;
+    private INDArray networkOutput;
+    private FearProfile profile;
+
+    @Setup
+    public void setUp() {
+        levels = new float[AIFearLearner.FEAR_CATEGORIES];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (i * 7 % levels.length) / (float) levels.length;
+        }
+        networkOutput = Nd4j.create(levels).reshape(1, levels.length);
+        profile = new FearProfile(levels.clone());
+    }
+
+    @Benchmark
+    public FearProfile fromFloatArray() {
+        return new FearProfile(levels.clone());
+    }
+
+    @Benchmark
+    public FearProfile fromINDArray() {
+        return new FearProfile(networkOutput.getRow(0));
+    }
+
+    @Benchmark
+    public FearProfile.FearType getDominantFear() {
+        return profile.getDominantFear();
+    }
+}
@@ -0,0 +1,41 @@
+package com.rjwolf.horrormod;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeatureExtractionBenchmark {
+    private PlayerBehaviorData data;
+    private final double[] buffer = new double[PlayerBehaviorData.FEATURE_COUNT];
+
+    @Setup
+    public void setUp() {
+        data = BenchmarkData.player(42);
+    }
+
+    @Benchmark
+    public double[] toFeatureArray() {
+        return data.toFeatureArray();
+    }
+
+    @Benchmark
+    public double[] writeFeaturesReused() {
+        data.writeFeatures(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public INDArray toINDArray() {
+        return data.toINDArray();
+    }
+}
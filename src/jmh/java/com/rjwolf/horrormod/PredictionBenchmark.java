@@ -0,0 +1,99 @@
+package com.rjwolf.horrormod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Cost of producing one FearProfile per player for a whole server's worth of players:
+// per-player learners one at a time (Java and ND4J backends), shared-backbone heads one at a
+// time, and the same heads through the batching FearPredictionScheduler, with a cold cache and
+// with every request answered from the FearProfileCache.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PredictionBenchmark {
+    @Param({ "1", "16", "100" })
+    public int players;
+
+    private PlayerBehaviorData[] data;
+    private UUID[] ids;
+    private AIFearLearner[] learners;
+    private PlayerFearHead[] heads;
+    private FearProfileCache cache;
+    private FearPredictionScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HorrorMetrics.setEnabled(false);
+        data = BenchmarkData.players(players);
+        ids = new UUID[players];
+        learners = new AIFearLearner[players];
+        heads = new PlayerFearHead[players];
+        AIFearLearner template = BenchmarkData.learner();
+        SharedFearModel shared = new SharedFearModel(template.cloneNetwork(), 0.01f);
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(0L, i);
+            learners[i] = AIFearLearner.copyOf(template);
+            heads[i] = shared.newHead();
+        }
+        cache = new FearProfileCache();
+        scheduler = new FearPredictionScheduler(1, cache);
+    }
+
+    @Benchmark
+    public void perPlayerJava(Blackhole blackhole) {
+        FastFearNetwork.setEnabled(true);
+        for (int i = 0; i < players; i++) {
+            blackhole.consume(learners[i].predictPlayerFears(data[i]));
+        }
+    }
+
+    @Benchmark
+    public void perPlayerNd4j(Blackhole blackhole) {
+        FastFearNetwork.setEnabled(false);
+        try {
+            for (int i = 0; i < players; i++) {
+                blackhole.consume(learners[i].predictPlayerFears(data[i]));
+            }
+        } finally {
+            FastFearNetwork.setEnabled(true);
+        }
+    }
+
+    @Benchmark
+    public void sharedHeadsSingle(Blackhole blackhole) {
+        FastFearNetwork.setEnabled(true);
+        for (int i = 0; i < players; i++) {
+            blackhole.consume(heads[i].predictPlayerFears(data[i]));
+        }
+    }
+
+    @Benchmark
+    public void sharedHeadsBatched(Blackhole blackhole) {
+        FastFearNetwork.setEnabled(true);
+        cache.clear();
+        for (int i = 0; i < players; i++) {
+            scheduler.request(ids[i], heads[i], data[i], blackhole::consume);
+        }
+        scheduler.flush();
+    }
+
+    @Benchmark
+    public void sharedHeadsCached(Blackhole blackhole) {
+        FastFearNetwork.setEnabled(true);
+        for (int i = 0; i < players; i++) {
+            scheduler.request(ids[i], heads[i], data[i], blackhole::consume);
+        }
+        scheduler.flush();
+    }
+}
@@ -0,0 +1,59 @@
+package com.rjwolf.horrormod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// One optimizer step at the batch sizes the training service produces. Time per sample is the
+// score divided by batchSize; batchSize 1 is what learnFromPlayerBehavior does.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrainingBenchmark {
+    @Param({ "1", "8", "32", "128" })
+    public int batchSize;
+
+    private AIFearLearner learner;
+    private PlayerFearHead head;
+    private PlayerBehaviorData single;
+    private double[][] features;
+    private double[][] labels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HorrorMetrics.setEnabled(false);
+        learner = BenchmarkData.learner();
+        head = new SharedFearModel(learner.cloneNetwork(), 0.01f).newHead();
+        single = BenchmarkData.player(7);
+        PlayerBehaviorData[] players = BenchmarkData.players(batchSize);
+        features = new double[batchSize][];
+        labels = new double[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            features[i] = players[i].toFeatureArray();
+            labels[i] = AIFearLearner.toLabelVector(players[i].getFearLabel());
+        }
+    }
+
+    @Benchmark
+    public void fitPerPlayerLearner() {
+        learner.fit(features, labels);
+    }
+
+    @Benchmark
+    public void fitSharedHead() {
+        head.fit(features, labels);
+    }
+
+    @Benchmark
+    public void learnFromPlayerBehavior() {
+        learner.learnFromPlayerBehavior(single);
+    }
+}
@@ -0,0 +1,596 @@
+package com.rjwolf.horrormod;
+
+import org.bytedeco.javacpp.Pointer;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Headless load test: scripted players run through HorrorPlayerLogic, the same per-player tick
+// TestEventHandler runs for real players (tick scheduler, behavior windows, probe cache, threat
+// scans over the hostile mob index, background training, learner tiering and batched prediction),
+// over a stub world with stub mobs and no Minecraft server or client. For each player count it
+// reports the server-thread time the mod spends per tick (simulated MSPT), heap and off-heap
+// growth, and training and prediction throughput.
+//
+// Not simulated: world effects, since FearWorldEditor edits a real ServerLevel, and the journal.
+// Mob spawning and movement stand in for vanilla and are not timed.
+//
+// Ticks are paced at 50 ms like a real server, so the training workers get a server's worth of
+// wall time per tick; --fast runs them back to back instead.
+//
+// Usage: LoadTestHarness [options]
+//   --players <n,n,...>    player counts to run (default 10,100,500)
+//   --seconds <n>          simulated seconds per run (default 60)
+//   --mode <mode>          PER_PLAYER or SHARED (default PER_PLAYER)
+//   --workers <n>          training threads (default 2)
+//   --batch <n>            training mini-batch size (default 32)
+//   --queue <n>            training queue capacity (default 4096)
+//   --budget-ms <ms>       tick scheduler budget (default 5.0)
+//   --seed <n>             script seed (default 1)
+//   --fast                 do not pace ticks to 50 ms
+//   --json <file>          also write the results as JSON
+public final class LoadTestHarness {
+    private static final int TICKS_PER_SECOND = 20;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Config defaults
+    private static final int PREDICTION_WINDOW_TICKS = 20;
+    private static final HorrorPlayerLogic.Settings SETTINGS = new HorrorPlayerLogic.Settings(true, 10, 16.0, 32, false, 1200);
+    private static final int MAX_MOBS_PER_PLAYER = 4;
+    private static final int MOB_LIFETIME_TICKS = 600;
+    private static final double MOB_SPEED = 1.0; // blocks per second, closing in on the player
+
+    private static final String[] ENTITIES = {
+        "minecraft:zombie", "minecraft:skeleton", "minecraft:creeper", "minecraft:spider", "minecraft:enderman"
+    };
+    private static final String[] BIOMES = {
+        "minecraft:plains", "minecraft:forest", "minecraft:swamp", "minecraft:deep_dark"
+    };
+
+    public enum Mode { PER_PLAYER, SHARED }
+
+    private final Mode mode;
+    private final int workers;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final double budgetMillis;
+    private final long seed;
+    private final boolean fast;
+    private final AIFearLearner template;
+
+    private LoadTestHarness(Mode mode, int workers, int batchSize, int queueCapacity,
+                            double budgetMillis, long seed, boolean fast, AIFearLearner template) {
+        this.mode = mode;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.budgetMillis = budgetMillis;
+        this.seed = seed;
+        this.fast = fast;
+        this.template = template;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] playerCounts = { 10, 100, 500 };
+        int seconds = 60;
+        Mode mode = Mode.PER_PLAYER;
+        int workers = 2;
+        int batchSize = 32;
+        int queueCapacity = 4096;
+        double budgetMillis = 5.0;
+        long seed = 1;
+        boolean fast = false;
+        Path json = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--players": playerCounts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--mode": mode = Mode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                case "--workers": workers = Integer.parseInt(args[++i]); break;
+                case "--batch": batchSize = Integer.parseInt(args[++i]); break;
+                case "--queue": queueCapacity = Integer.parseInt(args[++i]); break;
+                case "--budget-ms": budgetMillis = Double.parseDouble(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--fast": fast = true; break;
+                case "--json": json = Paths.get(args[++i]); break;
+                default:
+                    System.err.println("Usage: LoadTestHarness [--players n,n,...] [--seconds n] [--mode PER_PLAYER|SHARED]"
+                        + " [--workers n] [--batch n] [--queue n] [--budget-ms ms] [--seed n] [--fast] [--json file]");
+                    System.exit(2);
+            }
+        }
+
+        // Learners are copied from one template, as FearLearnerPool does, without the pool's
+        // config-dependent warm-up checks
+        long initStart = System.nanoTime();
+        AIFearLearner template = new AIFearLearner();
+        template.initialize();
+        System.out.printf("Fear AI initialized in %d ms; %s mode, %d training workers, %s ticks%n",
+            (System.nanoTime() - initStart) / 1_000_000, mode, workers, fast ? "unpaced" : "50 ms");
+
+        LoadTestHarness harness = new LoadTestHarness(mode, Math.max(1, workers), Math.max(1, batchSize),
+            Math.max(16, queueCapacity), budgetMillis, seed, fast, template);
+        List<Result> results = new ArrayList<>();
+        for (int players : playerCounts) {
+            Result result = harness.run(players, seconds * TICKS_PER_SECOND);
+            results.add(result);
+            result.print();
+        }
+        if (json != null) {
+            writeJson(json, results);
+            System.out.println("Wrote " + json.toAbsolutePath());
+        }
+    }
+
+    private Result run(int playerCount, int ticks) throws InterruptedException {
+        HorrorMetrics.reset();
+        long heapBefore = usedHeapAfterGc();
+        long offHeapBefore = TrainingMemory.getOffHeapBytes();
+        long physicalBefore = Pointer.physicalBytes();
+
+        HorrorTickScheduler scheduler = new HorrorTickScheduler(budgetMillis, 1024);
+        FearTrainingService training = new FearTrainingService(workers, queueCapacity, batchSize,
+            FearTrainingService.DropPolicy.DROP_OLDEST);
+        FearProfileCache cache = new FearProfileCache();
+        FearPredictionScheduler predictions = new FearPredictionScheduler(PREDICTION_WINDOW_TICKS, cache);
+        LearnerTierManager tiers = mode == Mode.PER_PLAYER
+            ? new LearnerTierManager(() -> AIFearLearner.copyOf(template), 300, 256L * 1024 * 1024, true, false) : null;
+        SharedFearModel shared = mode == Mode.SHARED
+            ? new SharedFearModel(template.cloneNetwork(), 0.01f) : null;
+        StubWorld world = new StubWorld(seed);
+        Simulation sim = new Simulation(training, new HorrorPlayerLogic.Dimension(new EnvironmentProbeCache(1200), world), world);
+
+        SimPlayer[] players = new SimPlayer[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            UUID id = new UUID(seed, i);
+            FearModel model = tiers != null ? tiers.create(id) : shared.newHead();
+            players[i] = new SimPlayer(id, model, new Random(seed * 31 + i));
+        }
+
+        long[] tickNanos = new long[ticks];
+        long runStart = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            long now = tick;
+            sim.tick = now;
+            for (SimPlayer player : players) {
+                player.move(now);
+                sim.stepMobs(player, now);
+            }
+
+            long start = System.nanoTime();
+            sim.dimension.cache.setCurrentTick(now);
+            scheduler.beginTick();
+            for (SimPlayer player : players) {
+                HorrorPlayerLogic.tick(sim, player, player.session, player.id, now, scheduler, predictions, SETTINGS);
+                sim.deliverEvents(player);
+            }
+            scheduler.submit(HorrorTickScheduler.Priority.NORMAL, () -> predictions.onServerTick(now));
+            if (tiers != null && tick % TestEventHandler.TIER_SWEEP_TICKS == 0) {
+                scheduler.submit(HorrorTickScheduler.Priority.NORMAL, tiers::sweep);
+            }
+            tickNanos[tick] = System.nanoTime() - start;
+            if (!fast) {
+                long remaining = start + TICK_NANOS - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+            }
+        }
+        double wallSeconds = (System.nanoTime() - runStart) / 1e9;
+
+        Result result = new Result(playerCount, ticks);
+        Arrays.sort(tickNanos);
+        result.msptMean = Arrays.stream(tickNanos).average().orElse(0) / 1e6;
+        result.msptP50 = percentile(tickNanos, 0.50) / 1e6;
+        result.msptP95 = percentile(tickNanos, 0.95) / 1e6;
+        result.msptP99 = percentile(tickNanos, 0.99) / 1e6;
+        result.msptMax = tickNanos[ticks - 1] / 1e6;
+        result.overBudgetTicks = scheduler.getOverBudgetTicks();
+        result.shedTasks = scheduler.getShedCount();
+        result.trainedPerSecond = training.getTrainedCount() / wallSeconds;
+        result.submittedPerSecond = training.getSubmittedCount() / wallSeconds;
+        result.droppedSamples = training.getDroppedCount();
+        result.predictionsPerSecond = sim.predicted / wallSeconds;
+        result.cacheHits = cache.getHits();
+        result.hotLearners = tiers != null ? tiers.getHotCount() : -1;
+        result.mobsIndexed = sim.dimension.hostiles.size();
+        result.flights = sim.flights;
+        result.stands = sim.stands;
+        // Measured while every player's state is still reachable
+        result.heapGrowth = usedHeapAfterGc() - heapBefore;
+        result.offHeapGrowth = TrainingMemory.getOffHeapBytes() - offHeapBefore;
+        result.physicalGrowth = Pointer.physicalBytes() - physicalBefore;
+        result.workspacePeak = TrainingMemory.getWorkspacePeakBytes();
+        result.stages = HorrorMetrics.report();
+        Reference.reachabilityFence(players);
+        Reference.reachabilityFence(shared);
+
+        training.shutdown(5000);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(sorted.length * p) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // HorrorPlayerLogic's view of the scripted players, plus the Forge events they trigger
+    private static final class Simulation implements HorrorPlayerLogic.Host<SimPlayer> {
+        final FearTrainingService training;
+        final HorrorPlayerLogic.Dimension dimension;
+        final StubWorld world;
+        long tick;
+        long predicted;
+        long flights;
+        long stands;
+        private int nextMobId;
+
+        Simulation(FearTrainingService training, HorrorPlayerLogic.Dimension dimension, StubWorld world) {
+            this.training = training;
+            this.dimension = dimension;
+            this.world = world;
+        }
+
+        @Override
+        public boolean isGone(SimPlayer player) {
+            return false;
+        }
+
+        @Override
+        public long currentTick() {
+            return tick;
+        }
+
+        @Override
+        public double getX(SimPlayer player) {
+            return player.x;
+        }
+
+        @Override
+        public double getY(SimPlayer player) {
+            return player.y;
+        }
+
+        @Override
+        public double getZ(SimPlayer player) {
+            return player.z;
+        }
+
+        @Override
+        public HorrorPlayerLogic.Dimension dimensionOf(SimPlayer player) {
+            return dimension;
+        }
+
+        @Override
+        public void sampleBehavior(SimPlayer player, PlayerBehaviorData data) {
+            data.updateBehavior(tick * 50, player.blockX(), player.blockY(), player.blockZ(),
+                player.onGround, player.yMotion, player.crouching, world.biomeAt(player.blockX(), player.blockZ()));
+        }
+
+        @Override
+        public void onSampled(SimPlayer player, PlayerSession session) {
+        }
+
+        @Override
+        public void learnFear(SimPlayer player, PlayerSession session, FearProfile.FearType fearType, double strength) {
+            HorrorPlayerLogic.learnFear(session, player.id, fearType, strength, training, null);
+        }
+
+        @Override
+        public void startWorldEffect(SimPlayer player, PlayerSession session) {
+        }
+
+        @Override
+        public void onPredicted(SimPlayer player, FearProfile profile) {
+            predicted++;
+        }
+
+        @Override
+        public void onReaction(boolean fled) {
+            if (fled) {
+                flights++;
+            } else {
+                stands++;
+            }
+        }
+
+        // Scripted hurt and fall events, about once a second per player like Forge events
+        void deliverEvents(SimPlayer player) {
+            if (!HorrorTickScheduler.isDue(player.id, tick, TICKS_PER_SECOND)) {
+                return;
+            }
+            if (!player.mobs.isEmpty() && player.random.nextInt(player.y < HorrorPlayerLogic.UNDERGROUND_Y ? 20 : 60) == 0) {
+                StubMob attacker = player.mobs.get(player.random.nextInt(player.mobs.size()));
+                HorrorPlayerLogic.onAttacked(this, player, player.session, attacker, SETTINGS.threatsEnabled);
+            }
+            if (player.random.nextInt(90) == 0) {
+                float distance = 4 + player.random.nextFloat() * 16;
+                learnFear(player, player.session, FearProfile.FearType.HEIGHTS, HorrorPlayerLogic.fallSignal(distance));
+            }
+        }
+
+        // Spawns mobs near the player, more often underground, walks them toward the player and
+        // despawns them after a while, keeping the index current as the join, leave and
+        // section-change events would
+        void stepMobs(SimPlayer player, long now) {
+            List<StubMob> mobs = player.mobs;
+            for (int i = mobs.size() - 1; i >= 0; i--) {
+                StubMob mob = mobs.get(i);
+                if (now - mob.spawnTick >= MOB_LIFETIME_TICKS) {
+                    mob.alive = false;
+                    dimension.hostiles.remove(mob.id);
+                    mobs.remove(i);
+                    continue;
+                }
+                double dx = player.x - mob.x;
+                double dz = player.z - mob.z;
+                double distance = Math.sqrt(dx * dx + dz * dz);
+                if (distance > 1.5) {
+                    int chunkX = ((int) Math.floor(mob.x)) >> 4;
+                    int chunkZ = ((int) Math.floor(mob.z)) >> 4;
+                    mob.x += dx / distance * MOB_SPEED / TICKS_PER_SECOND;
+                    mob.z += dz / distance * MOB_SPEED / TICKS_PER_SECOND;
+                    int newChunkX = ((int) Math.floor(mob.x)) >> 4;
+                    int newChunkZ = ((int) Math.floor(mob.z)) >> 4;
+                    if (newChunkX != chunkX || newChunkZ != chunkZ) {
+                        dimension.hostiles.move(mob.id, newChunkX, newChunkZ);
+                    }
+                }
+                mob.y = player.y;
+            }
+            if (mobs.size() < MAX_MOBS_PER_PLAYER && now % TICKS_PER_SECOND == 0
+                    && player.random.nextInt(player.y < HorrorPlayerLogic.UNDERGROUND_Y ? 3 : 8) == 0) {
+                double angle = player.random.nextDouble() * Math.PI * 2;
+                double distance = 8 + player.random.nextDouble() * 6;
+                StubMob mob = new StubMob(nextMobId++, ENTITIES[player.random.nextInt(ENTITIES.length)], now,
+                    player.x + Math.cos(angle) * distance, player.y, player.z + Math.sin(angle) * distance);
+                mobs.add(mob);
+                dimension.hostiles.add(mob);
+            }
+        }
+    }
+
+    private static final class StubMob implements ThreatTracker.Mob {
+        final int id;
+        final String type;
+        final long spawnTick;
+        double x;
+        double y;
+        double z;
+        boolean alive = true;
+
+        StubMob(int id, String type, long spawnTick, double x, double y, double z) {
+            this.id = id;
+            this.type = type;
+            this.spawnTick = spawnTick;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public double getZ() {
+            return z;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        @Override
+        public void recordReaction(PlayerBehaviorData data, double reactionSeconds, boolean fled) {
+            data.recordEntityReaction(type, reactionSeconds, fled);
+        }
+    }
+
+    // Scripted movement: every few seconds a player switches between idling, walking, sprinting,
+    // sneaking and caving, with occasional jumps
+    private static final class SimPlayer {
+        final UUID id;
+        final PlayerSession session = new PlayerSession();
+        final Random random;
+        final List<StubMob> mobs = new ArrayList<>();
+        double x;
+        double y = 70;
+        double z;
+        double heading;
+        double speed;
+        double yMotion;
+        boolean onGround = true;
+        boolean crouching;
+        long nextChange;
+
+        SimPlayer(UUID id, FearModel model, Random random) {
+            this.id = id;
+            this.session.setModel(model);
+            this.random = random;
+            this.x = random.nextInt(4096) - 2048;
+            this.z = random.nextInt(4096) - 2048;
+        }
+
+        void move(long tick) {
+            if (tick >= nextChange) {
+                nextChange = tick + TICKS_PER_SECOND * (3 + random.nextInt(20));
+                heading = random.nextDouble() * Math.PI * 2;
+                crouching = false;
+                switch (random.nextInt(5)) {
+                    case 0: speed = 0; break;
+                    case 1: speed = 4.3; break;
+                    case 2: speed = 5.6; break;
+                    case 3: speed = 1.3; crouching = true; break;
+                    default: speed = 4.3; y = 20 + random.nextInt(30); break;
+                }
+                if (speed > 0 && random.nextInt(3) == 0 && y < 50) {
+                    y = 70; // back to the surface
+                }
+            }
+            x += Math.cos(heading) * speed / TICKS_PER_SECOND;
+            z += Math.sin(heading) * speed / TICKS_PER_SECOND;
+            if (onGround && speed > 0 && random.nextInt(40) == 0) {
+                onGround = false;
+                yMotion = 0.42;
+            } else if (!onGround) {
+                yMotion -= 0.08;
+                if (yMotion < -0.3) {
+                    onGround = true;
+                    yMotion = 0;
+                }
+            }
+        }
+
+        int blockX() {
+            return (int) Math.floor(x);
+        }
+
+        int blockY() {
+            return (int) Math.floor(y);
+        }
+
+        int blockZ() {
+            return (int) Math.floor(z);
+        }
+    }
+
+    // Terrain from a hash: solid ground up to y=64 with caves carved below, scattered torches and
+    // biomes in 128-block regions.
+    private static final class StubWorld implements EnvironmentProbeCache.BlockSampler {
+        private final long seed;
+
+        StubWorld(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean isSolid(int x, int y, int z) {
+            if (y >= 64) {
+                return false;
+            }
+            // Caves: roughly a quarter of 4x4x4 cells below the surface are hollow
+            return (hash(x >> 2, y >> 2, z >> 2) & 3) != 0;
+        }
+
+        @Override
+        public int getLightEmission(int x, int y, int z) {
+            return !isSolid(x, y, z) && hash(x, y, z) % 97 == 0 ? 14 : 0;
+        }
+
+        String biomeAt(int x, int z) {
+            return BIOMES[(int) (hash(x >> 7, 0, z >> 7) & 3)];
+        }
+
+        private long hash(int x, int y, int z) {
+            long h = seed ^ x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL ^ z * 0x165667B19E3779F9L;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h & Long.MAX_VALUE;
+        }
+    }
+
+    private static final class Result {
+        final int players;
+        final int ticks;
+        double msptMean;
+        double msptP50;
+        double msptP95;
+        double msptP99;
+        double msptMax;
+        long overBudgetTicks;
+        long shedTasks;
+        double submittedPerSecond;
+        double trainedPerSecond;
+        long droppedSamples;
+        double predictionsPerSecond;
+        long cacheHits;
+        int hotLearners;
+        int mobsIndexed;
+        long flights;
+        long stands;
+        long heapGrowth;
+        long offHeapGrowth;
+        long physicalGrowth;
+        long workspacePeak;
+        List<String> stages;
+
+        Result(int players, int ticks) {
+            this.players = players;
+            this.ticks = ticks;
+        }
+
+        void print() {
+            System.out.printf(Locale.ROOT, "%n== %d players, %d ticks ==%n", players, ticks);
+            System.out.printf(Locale.ROOT, "MSPT (mod work): mean %.3f, p50 %.3f, p95 %.3f, p99 %.3f, max %.3f ms; %d over-budget ticks, %d tasks shed%n",
+                msptMean, msptP50, msptP95, msptP99, msptMax, overBudgetTicks, shedTasks);
+            System.out.printf(Locale.ROOT, "Training: %.1f samples/s submitted, %.1f trained, %d dropped%n",
+                submittedPerSecond, trainedPerSecond, droppedSamples);
+            System.out.printf(Locale.ROOT, "Inference: %.1f predictions/s, %d answered from cache%s%n",
+                predictionsPerSecond, cacheHits, hotLearners >= 0 ? ", " + hotLearners + " learners hot" : "");
+            System.out.printf(Locale.ROOT, "Threats: %d mobs indexed at the end, %d flights, %d stands%n",
+                mobsIndexed, flights, stands);
+            System.out.printf(Locale.ROOT, "Memory growth: heap %+d KiB, off-heap %+d KiB, process %+d MiB; workspace peak %d KiB%n",
+                heapGrowth / 1024, offHeapGrowth / 1024, physicalGrowth / 1024 / 1024, workspacePeak / 1024);
+            for (String line : stages) {
+                System.out.println("  " + line);
+            }
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                "{\"players\":%d,\"ticks\":%d,\"msptMean\":%.4f,\"msptP50\":%.4f,\"msptP95\":%.4f,\"msptP99\":%.4f,\"msptMax\":%.4f,"
+                    + "\"overBudgetTicks\":%d,\"shedTasks\":%d,\"submittedPerSecond\":%.2f,\"trainedPerSecond\":%.2f,"
+                    + "\"droppedSamples\":%d,\"predictionsPerSecond\":%.2f,\"cacheHits\":%d,\"heapGrowthBytes\":%d,"
+                    + "\"offHeapGrowthBytes\":%d,\"physicalGrowthBytes\":%d,\"workspacePeakBytes\":%d,"
+                    + "\"threatFlights\":%d,\"threatStands\":%d}",
+                players, ticks, msptMean, msptP50, msptP95, msptP99, msptMax, overBudgetTicks, shedTasks,
+                submittedPerSecond, trainedPerSecond, droppedSamples, predictionsPerSecond, cacheHits,
+                heapGrowth, offHeapGrowth, physicalGrowth, workspacePeak, flights, stands);
+        }
+    }
+
+    private static void writeJson(Path file, List<Result> results) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (Result result : results) {
+            if (json.length() > 1) json.append(',');
+            json.append(result.toJson());
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, json.append(']').toString());
+    }
+}
@@ -2,33 +2,67 @@ package com.rjwolf.horrormod;
 
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
-public class AIFearLearner {
+import java.nio.ByteBuffer;
+
+public class AIFearLearner implements FearModel {
     private MultiLayerNetwork network;
-    private static final int INPUT_FEATURES = PlayerBehaviorData.FEATURE_COUNT; // Number of behavioral features we track
-    private static final int FEAR_CATEGORIES = FearProfile.FearType.values().length;
+    private boolean closed;
+    private volatile FastFearNetwork fastNetwork; // plain Java copy used for prediction
+    private volatile long modelVersion;
+    static final int INPUT_FEATURES = PlayerBehaviorData.FEATURE_COUNT; // Number of behavioral features we track
+    static final int HIDDEN_1 = 100;
+    static final int HIDDEN_2 = 50;
+    static final int FEAR_CATEGORIES = FearProfile.FearType.values().length;
+    static final byte STATE_KIND = 1;
+
+    public AIFearLearner() {
+    }
+
+    private AIFearLearner(MultiLayerNetwork network) {
+        this.network = network;
+        this.fastNetwork = FastFearNetwork.fromNetwork(network);
+    }
+
+    public synchronized void initialize() {
+        network = new MultiLayerNetwork(buildConfiguration());
+        network.init();
+        fastNetwork = FastFearNetwork.fromNetwork(network);
+    }
+
+    // Copies parameters and updater state from an initialized learner, skipping the config build and init
+    public static AIFearLearner copyOf(AIFearLearner template) {
+        return new AIFearLearner(template.cloneNetwork());
+    }
+
+    public synchronized MultiLayerNetwork cloneNetwork() {
+        return network.clone();
+    }
 
-    public void initialize() {
-        // Create a neural network configuration
-        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+    // Shared by the per-player learners and the shared backbone so both stay on the same layout
+    static MultiLayerConfiguration buildConfiguration() {
+        return new NeuralNetConfiguration.Builder()
             .seed(123)
             .updater(new Adam(0.001))
+            // Activations and gradients are reused from per-thread workspaces instead of allocated per fit
+            .trainingWorkspaceMode(WorkspaceMode.ENABLED)
+            .inferenceWorkspaceMode(WorkspaceMode.ENABLED)
             .list()
             .layer(0, new DenseLayer.Builder()
                 .nIn(INPUT_FEATURES)
-                .nOut(100)
+                .nOut(HIDDEN_1)
                 .activation(Activation.RELU)
                 .build())
             .layer(1, new DenseLayer.Builder()
-                .nOut(50)
+                .nOut(HIDDEN_2)
                 .activation(Activation.RELU)
                 .build())
             .layer(2, new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
@@ -36,37 +70,107 @@ public class AIFearLearner {
                 .activation(Activation.SOFTMAX)
                 .build())
             .build();
-
-        network = new MultiLayerNetwork(conf);
-        network.init();
     }
 
     public void learnFromPlayerBehavior(PlayerBehaviorData data) {
-        INDArray features = convertBehaviorToFeatures(data);
-        INDArray labels;
-        if (data.getFearLabel() != null) {
-            double[] raw = data.getFearLabel();
-            // Ensure correct length
-            if (raw.length != FEAR_CATEGORIES) {
-                double[] resized = new double[FEAR_CATEGORIES];
-                System.arraycopy(raw, 0, resized, 0, Math.min(raw.length, FEAR_CATEGORIES));
-                raw = resized;
-            }
-            labels = Nd4j.create(raw).reshape(1, FEAR_CATEGORIES);
-        } else {
-            labels = Nd4j.zeros(1, FEAR_CATEGORIES);
-        }
+        fit(new double[][] { data.toFeatureArray() }, new double[][] { toLabelVector(data.getFearLabel()) });
+    }
 
-        org.nd4j.linalg.dataset.DataSet ds = new org.nd4j.linalg.dataset.DataSet(features, labels);
-        network.fit(ds);
+    // Fits one mini-batch. Called from the training service workers, so access to the
+    // network is serialized with prediction on the server thread.
+    @Override
+    public synchronized void fit(double[][] features, double[][] labels) {
+        network.fit(TrainingMemory.forCurrentThread().load(features, labels));
+        fastNetwork = FastFearNetwork.fromNetwork(network);
+        modelVersion++;
     }
 
+    public static double[] toLabelVector(double[] raw) {
+        if (raw == null) {
+            return new double[FEAR_CATEGORIES];
+        }
+        // Ensure correct length
+        if (raw.length != FEAR_CATEGORIES) {
+            double[] resized = new double[FEAR_CATEGORIES];
+            System.arraycopy(raw, 0, resized, 0, Math.min(raw.length, FEAR_CATEGORIES));
+            return resized;
+        }
+        return raw;
+    }
+
+    @Override
     public FearProfile predictPlayerFears(PlayerBehaviorData data) {
+        FastFearNetwork fast = fastNetwork;
+        if (fast != null && FastFearNetwork.isEnabled()) {
+            // Lock-free: the exported weights are immutable and swapped after each fit
+            float[] levels = new float[FEAR_CATEGORIES];
+            fast.predict(data, levels);
+            return new FearProfile(levels);
+        }
+        return predictWithNd4j(data);
+    }
+
+    private synchronized FearProfile predictWithNd4j(PlayerBehaviorData data) {
         INDArray features = convertBehaviorToFeatures(data);
         INDArray output = network.output(features);
         return new FearProfile(output.getRow(0));
     }
 
+    @Override
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    // Current inference weights; immutable, replaced after every fit
+    FastFearNetwork getFastNetwork() {
+        return fastNetwork;
+    }
+
+    @Override
+    public long estimateMemoryBytes() {
+        long params = network != null ? network.numParams() : 0;
+        // Off-heap parameters, gradients and two Adam moments, plus the on-heap FastFearNetwork copy
+        return params * 4 * 4 + params * 4;
+    }
+
+    @Override
+    public byte stateKind() {
+        return STATE_KIND;
+    }
+
+    @Override
+    public synchronized byte[] saveState() {
+        return NetworkState.save(network);
+    }
+
+    // Null once closed, for callers that may race a demotion
+    synchronized byte[] saveStateIfOpen() {
+        return closed ? null : NetworkState.save(network);
+    }
+
+    // Frees the network's native memory. Only for learners nothing will fit or save again.
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            network.close();
+        }
+    }
+
+    @Override
+    public synchronized boolean loadState(ByteBuffer in) {
+        if (!NetworkState.load(network, in)) {
+            return false;
+        }
+        fastNetwork = FastFearNetwork.fromNetwork(network);
+        modelVersion++;
+        return true;
+    }
+
+    // Largest difference between the Java and ND4J forward passes, used to validate the Java backend
+    public synchronized double verifyFastInference(int samples, double inputScale) {
+        return FastFearNetwork.maxDeviation(network, fastNetwork, samples, inputScale);
+    }
+
     private INDArray convertBehaviorToFeatures(PlayerBehaviorData data) {
         // Delegate conversion to PlayerBehaviorData so the feature mapping is centralized
         return data.toINDArray();
@@ -0,0 +1,38 @@
+package com.rjwolf.horrormod;
+
+// Immutable view of a player's feature vector, published by PlayerBehaviorData after every change.
+// Readers on any thread get a consistent vector and version from one volatile read, without locks.
+public final class BehaviorSnapshot {
+    private final double[] features;
+    private final long version;
+
+    BehaviorSnapshot(double[] features, long version) {
+        this.features = features;
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return features.length;
+    }
+
+    public double get(int index) {
+        return features[index];
+    }
+
+    public void copyTo(double[] out) {
+        System.arraycopy(features, 0, out, 0, features.length);
+    }
+
+    public double[] toArray() {
+        return features.clone();
+    }
+
+    // Shared array for hot paths inside the mod; callers must never write to it
+    double[] features() {
+        return features;
+    }
+}
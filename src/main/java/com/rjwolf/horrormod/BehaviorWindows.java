@@ -0,0 +1,135 @@
+package com.rjwolf.horrormod;
+
+import java.nio.ByteBuffer;
+
+// Fixed-size running sums of per-sample behavior signals over three horizons:
+//   short   - exact sliding window of SHORT_BUCKETS x SAMPLES_PER_BUCKET samples (a ring of buckets)
+//   long    - exponentially decayed sum with a time constant of LONG_WINDOW_SAMPLES samples
+//   session - plain totals since the object was created
+// Each horizon also tracks how many samples it covers, so callers can turn sums into rates.
+// add() and closeSample() are O(1) per channel touched; decay is applied lazily by growing the
+// weight of new contributions instead of shrinking every stored value.
+final class BehaviorWindows {
+    static final int SHORT_BUCKETS = 6;
+    static final int SAMPLES_PER_BUCKET = 10;
+    static final double LONG_WINDOW_SAMPLES = 600;
+    private static final double GROWTH = Math.exp(1.0 / LONG_WINDOW_SAMPLES);
+    private static final double RENORMALIZE_ABOVE = 1.0e12;
+
+    private final int channels;
+
+    private final double[] shortBuckets; // [channel * SHORT_BUCKETS + bucket]
+    private final double[] shortSums;
+    private final int[] shortBucketSamples = new int[SHORT_BUCKETS];
+    private int shortSamples;
+    private int currentBucket;
+
+    // Stored values are scaled by weight; the real decayed value is stored / weight
+    private final double[] longScaled;
+    private double longSamplesScaled;
+    private double weight = 1.0;
+
+    private final double[] sessionSums;
+    private long sessionSamples;
+
+    BehaviorWindows(int channels) {
+        this.channels = channels;
+        this.shortBuckets = new double[channels * SHORT_BUCKETS];
+        this.shortSums = new double[channels];
+        this.longScaled = new double[channels];
+        this.sessionSums = new double[channels];
+    }
+
+    // Adds to the sample in progress
+    void add(int channel, double amount) {
+        shortBuckets[channel * SHORT_BUCKETS + currentBucket] += amount;
+        shortSums[channel] += amount;
+        longScaled[channel] += amount * weight;
+        sessionSums[channel] += amount;
+    }
+
+    // Ends the sample in progress: counts it in every horizon and ages the windows by one sample
+    void closeSample() {
+        shortBucketSamples[currentBucket]++;
+        shortSamples++;
+        longSamplesScaled += weight;
+        sessionSamples++;
+
+        if (shortBucketSamples[currentBucket] == SAMPLES_PER_BUCKET) {
+            currentBucket = (currentBucket + 1) % SHORT_BUCKETS;
+            shortSamples -= shortBucketSamples[currentBucket];
+            shortBucketSamples[currentBucket] = 0;
+            for (int c = 0; c < channels; c++) {
+                int index = c * SHORT_BUCKETS + currentBucket;
+                shortSums[c] -= shortBuckets[index];
+                shortBuckets[index] = 0;
+            }
+        }
+
+        weight *= GROWTH;
+        if (weight > RENORMALIZE_ABOVE) {
+            for (int c = 0; c < channels; c++) {
+                longScaled[c] /= weight;
+            }
+            longSamplesScaled /= weight;
+            weight = 1.0;
+        }
+    }
+
+    double shortSum(int channel) {
+        return shortSums[channel];
+    }
+
+    double shortSamples() {
+        return shortSamples;
+    }
+
+    double longSum(int channel) {
+        return longScaled[channel] / weight;
+    }
+
+    double longSamples() {
+        return longSamplesScaled / weight;
+    }
+
+    double sessionSum(int channel) {
+        return sessionSums[channel];
+    }
+
+    double sessionSamples() {
+        return sessionSamples;
+    }
+
+    int channels() {
+        return channels;
+    }
+
+    // Only the decayed horizon is persisted; the short window and the session restart on login.
+    // Layout: int channels, double[channels] sums, double samples
+    int serializedSize() {
+        return 4 + 8 * channels + 8;
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putInt(channels);
+        for (int c = 0; c < channels; c++) {
+            out.putDouble(longSum(c));
+        }
+        out.putDouble(longSamples());
+    }
+
+    // Skips the stored window if it was written with a different channel layout
+    void readFrom(ByteBuffer in) {
+        int stored = in.getInt();
+        double[] sums = new double[stored];
+        for (int c = 0; c < stored; c++) {
+            sums[c] = in.getDouble();
+        }
+        double samples = in.getDouble();
+        if (stored == channels) {
+            System.arraycopy(sums, 0, longScaled, 0, channels);
+            longSamplesScaled = samples;
+            weight = 1.0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.rjwolf.horrormod;
+
+import net.minecraft.world.entity.Entity;
+
+// A live entity as ThreatTracker sees it
+final class EntityMob implements ThreatTracker.Mob {
+    private final Entity entity;
+
+    EntityMob(Entity entity) {
+        this.entity = entity;
+    }
+
+    @Override
+    public int getId() {
+        return entity.getId();
+    }
+
+    @Override
+    public double getX() {
+        return entity.getX();
+    }
+
+    @Override
+    public double getY() {
+        return entity.getY();
+    }
+
+    @Override
+    public double getZ() {
+        return entity.getZ();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return entity.isAlive();
+    }
+
+    @Override
+    public void recordReaction(PlayerBehaviorData data, double reactionSeconds, boolean fled) {
+        data.recordEntityReaction(entity.getType(), reactionSeconds, fled);
+    }
+}
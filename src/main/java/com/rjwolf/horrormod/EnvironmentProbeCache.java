@@ -0,0 +1,199 @@
+package com.rjwolf.horrormod;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+
+// Caches block solidity, light emission and the 3x3x3 "enclosure score" per chunk section for one
+// dimension, shared by every player in it. Entries are filled lazily from a BlockSampler and
+// dropped on block changes, chunk unloads and after maxAgeTicks as a safety net for changes that
+// fire no event. Server thread only.
+public class EnvironmentProbeCache {
+    // Enclosure window relative to the probed position, matching the original isPlayerEnclosed
+    private static final int WINDOW_MIN_Y = 0;
+    private static final int WINDOW_MAX_Y = 2;
+
+    public interface BlockSampler {
+        boolean isSolid(int x, int y, int z);
+
+        int getLightEmission(int x, int y, int z);
+    }
+
+    private final Long2ObjectOpenHashMap<Int2ObjectOpenHashMap<SectionProbe>> chunks = new Long2ObjectOpenHashMap<>();
+    private final long maxAgeTicks;
+    private long currentTick;
+
+    private long hits;
+    private long misses;
+
+    public EnvironmentProbeCache(long maxAgeTicks) {
+        this.maxAgeTicks = maxAgeTicks;
+    }
+
+    public void setCurrentTick(long tick) {
+        this.currentTick = tick;
+    }
+
+    public boolean isSolid(BlockSampler sampler, int x, int y, int z) {
+        SectionProbe section = section(x, y, z, true);
+        int index = index(x, y, z);
+        if (section.isSolidKnown(index)) {
+            hits++;
+        } else {
+            misses++;
+            section.setSolid(index, sampler.isSolid(x, y, z));
+        }
+        return section.isSolid(index);
+    }
+
+    public int getLightEmission(BlockSampler sampler, int x, int y, int z) {
+        SectionProbe section = section(x, y, z, true);
+        int index = index(x, y, z);
+        int light = section.light[index];
+        if (light >= 0) {
+            hits++;
+            return light;
+        }
+        misses++;
+        light = sampler.getLightEmission(x, y, z);
+        section.light[index] = (byte) light;
+        return light;
+    }
+
+    // Number of solid blocks in the 3x3x3 box spanning x-1..x+1, y..y+2, z-1..z+1
+    public int getEnclosureScore(BlockSampler sampler, int x, int y, int z) {
+        SectionProbe section = section(x, y, z, true);
+        int index = index(x, y, z);
+        int score = section.enclosure[index];
+        if (score >= 0) {
+            hits++;
+            return score;
+        }
+        score = 0;
+        for (int dy = WINDOW_MIN_Y; dy <= WINDOW_MAX_Y; dy++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (isSolid(sampler, x + dx, y + dy, z + dz)) {
+                        score++;
+                    }
+                }
+            }
+        }
+        // isSolid may have reset an expired section, so look it up again
+        section(x, y, z, true).enclosure[index] = (byte) score;
+        return score;
+    }
+
+    // A block changed: forget it and every enclosure score whose window contains it
+    public void invalidateBlock(int x, int y, int z) {
+        SectionProbe section = section(x, y, z, false);
+        if (section != null) {
+            int index = index(x, y, z);
+            section.clearSolid(index);
+            section.light[index] = -1;
+        }
+        for (int qy = y - WINDOW_MAX_Y; qy <= y - WINDOW_MIN_Y; qy++) {
+            for (int qz = z - 1; qz <= z + 1; qz++) {
+                for (int qx = x - 1; qx <= x + 1; qx++) {
+                    SectionProbe owner = section(qx, qy, qz, false);
+                    if (owner != null) {
+                        owner.enclosure[index(qx, qy, qz)] = -1;
+                    }
+                }
+            }
+        }
+    }
+
+    public void invalidateChunk(int chunkX, int chunkZ) {
+        chunks.remove(chunkKey(chunkX, chunkZ));
+    }
+
+    public void clear() {
+        chunks.clear();
+    }
+
+    public int getCachedSectionCount() {
+        int count = 0;
+        for (Int2ObjectOpenHashMap<SectionProbe> sections : chunks.values()) {
+            count += sections.size();
+        }
+        return count;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private SectionProbe section(int x, int y, int z, boolean create) {
+        long chunkKey = chunkKey(x >> 4, z >> 4);
+        Int2ObjectOpenHashMap<SectionProbe> sections = chunks.get(chunkKey);
+        if (sections == null) {
+            if (!create) return null;
+            sections = new Int2ObjectOpenHashMap<>();
+            chunks.put(chunkKey, sections);
+        }
+        SectionProbe section = sections.get(y >> 4);
+        if (section == null) {
+            if (!create) return null;
+            section = new SectionProbe(currentTick);
+            sections.put(y >> 4, section);
+        } else if (currentTick - section.createdTick > maxAgeTicks) {
+            section.reset(currentTick);
+        }
+        return section;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX & 0xFFFFFFFFL) | (((long) chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    private static final class SectionProbe {
+        final long[] solidKnown = new long[64];
+        final long[] solid = new long[64];
+        final byte[] light = new byte[4096];     // -1 = unknown
+        final byte[] enclosure = new byte[4096]; // -1 = unknown
+        long createdTick;
+
+        SectionProbe(long tick) {
+            reset(tick);
+        }
+
+        void reset(long tick) {
+            Arrays.fill(solidKnown, 0L);
+            Arrays.fill(light, (byte) -1);
+            Arrays.fill(enclosure, (byte) -1);
+            createdTick = tick;
+        }
+
+        boolean isSolidKnown(int index) {
+            return (solidKnown[index >> 6] & (1L << index)) != 0;
+        }
+
+        boolean isSolid(int index) {
+            return (solid[index >> 6] & (1L << index)) != 0;
+        }
+
+        void setSolid(int index, boolean value) {
+            long bit = 1L << index;
+            solidKnown[index >> 6] |= bit;
+            if (value) {
+                solid[index >> 6] |= bit;
+            } else {
+                solid[index >> 6] &= ~bit;
+            }
+        }
+
+        void clearSolid(int index) {
+            solidKnown[index >> 6] &= ~(1L << index);
+        }
+    }
+}
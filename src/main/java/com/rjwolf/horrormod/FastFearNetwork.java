@@ -0,0 +1,214 @@
+package com.rjwolf.horrormod;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Random;
+
+// Immutable float copy of a trained fear MLP (dense ReLU -> dense ReLU -> softmax) evaluated in plain Java.
+// For a network this small the ND4J call overhead costs more than the math, so prediction runs here
+// with per-thread scratch buffers, writing into an output array the caller owns; nothing is
+// allocated here. Exported again after every training step.
+public final class FastFearNetwork {
+    private static final int INPUT = AIFearLearner.INPUT_FEATURES;
+    private static final int HIDDEN_1 = AIFearLearner.HIDDEN_1;
+    private static final int HIDDEN_2 = AIFearLearner.HIDDEN_2;
+    private static final int OUTPUT = AIFearLearner.FEAR_CATEGORIES;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final ThreadLocal<BatchScratch> BATCH_SCRATCH = ThreadLocal.withInitial(BatchScratch::new);
+    private static volatile boolean enabled = true;
+
+    // Row-major [nIn * nOut], the same orientation DL4J uses for dense layer weights
+    private final float[] w0, b0, w1, b1, w2, b2;
+
+    private FastFearNetwork(float[] w0, float[] b0, float[] w1, float[] b1, float[] w2, float[] b2) {
+        this.w0 = w0;
+        this.b0 = b0;
+        this.w1 = w1;
+        this.b1 = b1;
+        this.w2 = w2;
+        this.b2 = b2;
+    }
+
+    // Caller must hold whatever lock guards the network against concurrent training
+    public static FastFearNetwork fromNetwork(MultiLayerNetwork network) {
+        return new FastFearNetwork(
+            weights(network.getLayer(0)), bias(network.getLayer(0)),
+            weights(network.getLayer(1)), bias(network.getLayer(1)),
+            weights(network.getLayer(2)), bias(network.getLayer(2)));
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    // Writes the softmax output for one feature row into out
+    public void predict(PlayerBehaviorData data, float[] out) {
+        Scratch scratch = SCRATCH.get();
+        // The snapshot array is immutable, so it is read in place instead of copied
+        embed(data.getSnapshot().features(), scratch.hidden2);
+        dense(scratch.hidden2, HIDDEN_2, w2, b2, OUTPUT, out);
+        softmax(out);
+    }
+
+    public void predict(double[] features, float[] out) {
+        Scratch scratch = SCRATCH.get();
+        embed(features, scratch.hidden2);
+        dense(scratch.hidden2, HIDDEN_2, w2, b2, OUTPUT, out);
+        softmax(out);
+    }
+
+    // Activations of the last hidden layer, what SharedFearModel hands to player heads
+    public void embed(double[] features, float[] hidden2Out) {
+        Scratch scratch = SCRATCH.get();
+        float[] in = scratch.inputFloat;
+        for (int i = 0; i < INPUT; i++) {
+            in[i] = (float) features[i];
+        }
+        dense(in, INPUT, w0, b0, HIDDEN_1, scratch.hidden1);
+        relu(scratch.hidden1);
+        dense(scratch.hidden1, HIDDEN_1, w1, b1, HIDDEN_2, hidden2Out);
+        relu(hidden2Out);
+    }
+
+    public void embed(PlayerBehaviorData data, float[] hidden2Out) {
+        embed(data.getSnapshot().features(), hidden2Out);
+    }
+
+    // Batched embed: each weight row is loaded once and applied to every row of the batch
+    public void embedBatch(double[][] features, int rows, float[][] hidden2Out) {
+        BatchScratch scratch = BATCH_SCRATCH.get().ensure(rows);
+        for (int r = 0; r < rows; r++) {
+            float[] in = scratch.input[r];
+            for (int i = 0; i < INPUT; i++) {
+                in[i] = (float) features[r][i];
+            }
+        }
+        denseBatch(scratch.input, rows, INPUT, false, w0, b0, HIDDEN_1, scratch.hidden1);
+        denseBatch(scratch.hidden1, rows, HIDDEN_1, true, w1, b1, HIDDEN_2, hidden2Out);
+        for (int r = 0; r < rows; r++) {
+            relu(hidden2Out[r]);
+        }
+    }
+
+    // Largest absolute difference from ND4J's output over random inputs in [0, scale)
+    public static double maxDeviation(MultiLayerNetwork network, FastFearNetwork fast, int samples, double scale) {
+        Random random = new Random(42);
+        double[][] inputs = new double[samples][INPUT];
+        for (double[] row : inputs) {
+            for (int i = 0; i < INPUT; i++) {
+                row[i] = random.nextDouble() * scale;
+            }
+        }
+        float[][] expected = network.output(Nd4j.create(inputs)).toFloatMatrix();
+        float[] actual = new float[OUTPUT];
+        double worst = 0;
+        for (int row = 0; row < samples; row++) {
+            fast.predict(inputs[row], actual);
+            for (int c = 0; c < OUTPUT; c++) {
+                worst = Math.max(worst, Math.abs(expected[row][c] - actual[c]));
+            }
+        }
+        return worst;
+    }
+
+    public int getParameterCount() {
+        return w0.length + b0.length + w1.length + b1.length + w2.length + b2.length;
+    }
+
+    private static void dense(float[] in, int nIn, float[] w, float[] b, int nOut, float[] out) {
+        System.arraycopy(b, 0, out, 0, nOut);
+        for (int i = 0; i < nIn; i++) {
+            float x = in[i];
+            if (x == 0f) continue; // ReLU output is mostly zeros
+            int offset = i * nOut;
+            for (int j = 0; j < nOut; j++) {
+                out[j] += x * w[offset + j];
+            }
+        }
+    }
+
+    // Hidden-layer inputs are raw pre-activations, so callers pass applyReluToInput to have ReLU
+    // applied as they are read
+    private static void denseBatch(float[][] in, int rows, int nIn, boolean applyReluToInput, float[] w, float[] b,
+                                   int nOut, float[][] out) {
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(b, 0, out[r], 0, nOut);
+        }
+        for (int i = 0; i < nIn; i++) {
+            int offset = i * nOut;
+            for (int r = 0; r < rows; r++) {
+                float x = in[r][i];
+                if (applyReluToInput && x < 0f) x = 0f;
+                if (x == 0f) continue;
+                float[] row = out[r];
+                for (int j = 0; j < nOut; j++) {
+                    row[j] += x * w[offset + j];
+                }
+            }
+        }
+    }
+
+    private static void relu(float[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] < 0f) values[i] = 0f;
+        }
+    }
+
+    static void softmax(float[] values) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (float v : values) {
+            if (v > max) max = v;
+        }
+        float sum = 0f;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) Math.exp(values[i] - max);
+            sum += values[i];
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] /= sum;
+        }
+    }
+
+    // DL4J stores dense weights as [nIn, nOut]; flattened row-major
+    static float[] weights(Layer layer) {
+        INDArray w = layer.getParam("W");
+        float[][] matrix = w.toFloatMatrix();
+        float[] flat = new float[matrix.length * matrix[0].length];
+        for (int i = 0; i < matrix.length; i++) {
+            System.arraycopy(matrix[i], 0, flat, i * matrix[i].length, matrix[i].length);
+        }
+        return flat;
+    }
+
+    static float[] bias(Layer layer) {
+        return layer.getParam("b").toFloatVector();
+    }
+
+    private static final class BatchScratch {
+        float[][] input = new float[0][];
+        float[][] hidden1 = new float[0][];
+
+        BatchScratch ensure(int rows) {
+            if (input.length < rows) {
+                int size = Math.max(rows, input.length * 2);
+                input = new float[size][INPUT];
+                hidden1 = new float[size][HIDDEN_1];
+            }
+            return this;
+        }
+    }
+
+    private static final class Scratch {
+        final float[] inputFloat = new float[INPUT];
+        final float[] hidden1 = new float[HIDDEN_1];
+        final float[] hidden2 = new float[HIDDEN_2];
+    }
+}
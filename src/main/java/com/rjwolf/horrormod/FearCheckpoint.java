@@ -0,0 +1,44 @@
+package com.rjwolf.horrormod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Pretrained AIFearLearner weights, written by OfflineFearTrainer and loaded into the template
+// learner at warm-up. Same NetworkState payload as the per-player saves, behind its own header.
+// Layout (big-endian): int magic, short version, short featureCount, then AIFearLearner.saveState
+final class FearCheckpoint {
+    private static final int MAGIC = 0x4846434b; // "HFCK"
+    private static final short FORMAT_VERSION = 1;
+
+    private FearCheckpoint() {
+    }
+
+    static void write(Path file, AIFearLearner learner) throws IOException {
+        byte[] state = learner.saveState();
+        ByteBuffer buffer = ByteBuffer.allocate(8 + state.length);
+        buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) PlayerBehaviorData.FEATURE_COUNT);
+        buffer.put(state);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns false, leaving the learner untouched, if the checkpoint was made for another layout
+    static boolean read(Path file, AIFearLearner learner) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("Not a fear model checkpoint: " + file);
+        }
+        if (in.getShort() != FORMAT_VERSION || in.getShort() != PlayerBehaviorData.FEATURE_COUNT) {
+            return false;
+        }
+        return learner.loadState(in);
+    }
+}
@@ -0,0 +1,361 @@
+package com.rjwolf.horrormod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Append-only record of every learning signal and behavior sample, kept as training data.
+// Producers copy a fixed-size record into a preallocated ring (a CAS to claim a slot, no locks,
+// no allocation) and a background thread appends published slots to the current segment file.
+// When the ring is full the record is dropped and counted rather than blocking the server.
+// Segments roll over at segmentBytes and are gzipped once closed; the oldest closed segments are
+// deleted once together they exceed maxBytes.
+//
+// Segment layout (big-endian):
+//   int magic, short version, short featureCount, int recordSize, then records:
+//   long timestampMillis, long uuidMost, long uuidLeast, byte kind, byte fearType (-1 = none),
+//   short reserved, float strength, float[featureCount] features
+public class FearEventJournal {
+    private static final Logger LOGGER = LogManager.getLogger();
+    public static final int MAGIC = 0x48464a4c; // "HFJL"
+    public static final short FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    public static final int RECORD_SIZE = 8 + 16 + 1 + 1 + 2 + 4 + 4 * PlayerBehaviorData.FEATURE_COUNT;
+    public static final String SEGMENT_SUFFIX = ".bin";
+    public static final String COMPRESSED_SUFFIX = ".bin.gz";
+
+    public static final byte KIND_LEARN = 0;    // a learnFear signal with its label
+    public static final byte KIND_SNAPSHOT = 1; // a periodic behavior sample, no label
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final long flushIntervalNanos;
+
+    // Ring of capacity fixed-size slots. claimed/consumed are absolute sequence numbers;
+    // published[slot] holds the sequence last written to that slot.
+    private final int capacity;
+    private final ByteBuffer ring;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // Flusher thread only
+    private final ByteBuffer staging;
+    private FileChannel channel;
+    private Path segmentFile;
+    private long segmentSize;
+
+    public FearEventJournal(Path directory, int bufferRecords, long segmentBytes, long maxBytes, long flushIntervalMillis) {
+        this.directory = directory;
+        this.capacity = Math.max(16, bufferRecords);
+        this.segmentBytes = Math.max(HEADER_SIZE + RECORD_SIZE, segmentBytes);
+        this.maxBytes = maxBytes;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.staging = ByteBuffer.allocateDirect(Math.min(capacity, 1024) * RECORD_SIZE);
+        this.flusher = new Thread(this::runFlusher, "HorrorMod-Journal");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static FearEventJournal fromConfig(Path directory) {
+        return new FearEventJournal(directory,
+            HorrorConfig.JOURNAL_BUFFER_RECORDS.get(),
+            HorrorConfig.JOURNAL_SEGMENT_MB.get() * 1024L * 1024L,
+            HorrorConfig.JOURNAL_MAX_MB.get() * 1024L * 1024L,
+            HorrorConfig.JOURNAL_FLUSH_MS.get());
+    }
+
+    // Any thread, never blocks. fearType is null for snapshots. Returns false if the record was dropped.
+    public boolean append(byte kind, UUID playerId, double[] features, FearProfile.FearType fearType, double strength) {
+        if (!running) {
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence % capacity);
+        int offset = slot * RECORD_SIZE;
+        // Absolute puts: every producer writes its own slot and never moves the shared position
+        ring.putLong(offset, System.currentTimeMillis());
+        ring.putLong(offset + 8, playerId.getMostSignificantBits());
+        ring.putLong(offset + 16, playerId.getLeastSignificantBits());
+        ring.put(offset + 24, kind);
+        ring.put(offset + 25, fearType != null ? (byte) fearType.ordinal() : (byte) -1);
+        ring.putShort(offset + 26, (short) 0);
+        ring.putFloat(offset + 28, (float) strength);
+        int featureOffset = offset + 32;
+        for (int i = 0; i < PlayerBehaviorData.FEATURE_COUNT; i++) {
+            ring.putFloat(featureOffset + 4 * i, i < features.length ? (float) features[i] : 0f);
+        }
+        published.set(slot, sequence);
+        return true;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSegmentCount() {
+        return segments.get();
+    }
+
+    public long getBufferedCount() {
+        return claimed.get() - consumed.get();
+    }
+
+    // Reads a closed (.bin.gz) or uncompressed segment. The Record passed to the consumer is reused.
+    // Returns the number of records read; a segment with another feature layout is skipped.
+    public static long read(Path segment, Consumer<Record> consumer) throws IOException {
+        InputStream raw = Files.newInputStream(segment);
+        if (segment.getFileName().toString().endsWith(".gz")) {
+            raw = new GZIPInputStream(raw, 64 * 1024);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION) {
+                throw new IOException("Not a fear event journal segment: " + segment);
+            }
+            int featureCount = in.readShort();
+            int recordSize = in.readInt();
+            if (featureCount != PlayerBehaviorData.FEATURE_COUNT || recordSize != RECORD_SIZE) {
+                LOGGER.warn("Skipping journal segment {}: {} features, expected {}",
+                    segment, featureCount, PlayerBehaviorData.FEATURE_COUNT);
+                return 0;
+            }
+            byte[] bytes = new byte[RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Record record = new Record();
+            long count = 0;
+            while (true) {
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    // End of segment, or a torn last record after a crash
+                    return count;
+                }
+                buffer.clear();
+                record.timestampMillis = buffer.getLong();
+                record.playerMost = buffer.getLong();
+                record.playerLeast = buffer.getLong();
+                record.kind = buffer.get();
+                record.fearType = buffer.get();
+                buffer.getShort();
+                record.strength = buffer.getFloat();
+                buffer.asFloatBuffer().get(record.features);
+                consumer.accept(record);
+                count++;
+            }
+        }
+    }
+
+    public static final class Record {
+        public long timestampMillis;
+        public long playerMost;
+        public long playerLeast;
+        public byte kind;
+        public int fearType; // FearType ordinal, -1 for snapshots
+        public float strength;
+        public final float[] features = new float[PlayerBehaviorData.FEATURE_COUNT];
+    }
+
+    // Stops accepting records, writes what is buffered and compresses the last segment
+    public void close(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            LOGGER.warn("Fear event journal did not finish within {} ms; {} records lost", timeoutMillis, getBufferedCount());
+        }
+    }
+
+    private void runFlusher() {
+        compressLeftoverSegments();
+        enforceRetention();
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            drain();
+        }
+        drain();
+        closeSegment();
+    }
+
+    private void drain() {
+        long next = consumed.get();
+        while (true) {
+            staging.clear();
+            // Copy a run of published slots; stop at the first slot a producer is still filling
+            while (staging.remaining() >= RECORD_SIZE) {
+                int slot = (int) (next % capacity);
+                if (published.get(slot) != next) {
+                    break;
+                }
+                ByteBuffer record = ring.duplicate();
+                record.limit(slot * RECORD_SIZE + RECORD_SIZE).position(slot * RECORD_SIZE);
+                staging.put(record);
+                next++;
+            }
+            int records = staging.position() / RECORD_SIZE;
+            if (records == 0) {
+                return;
+            }
+            // The slots are copied, so producers may reuse them now
+            consumed.set(next);
+            staging.flip();
+            try {
+                ensureSegment();
+                while (staging.hasRemaining()) {
+                    segmentSize += channel.write(staging);
+                }
+                written.addAndGet(records);
+                if (segmentSize >= segmentBytes) {
+                    closeSegment();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to write fear event journal; {} records lost", records, e);
+                dropped.addAndGet(records);
+                closeSegment();
+            }
+        }
+    }
+
+    private void ensureSegment() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        segmentFile = directory.resolve("events-" + System.currentTimeMillis() + "-" + segments.get() + SEGMENT_SUFFIX);
+        channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) PlayerBehaviorData.FEATURE_COUNT).putInt(RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        segmentSize = HEADER_SIZE;
+        segments.incrementAndGet();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close journal segment {}", segmentFile, e);
+        }
+        channel = null;
+        compress(segmentFile);
+        enforceRetention();
+    }
+
+    // Segments left uncompressed by a crash are complete up to their last whole record
+    private void compressLeftoverSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path leftover : stream) {
+                compress(leftover);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not scan journal directory {}", directory, e);
+        }
+    }
+
+    // Deletes the oldest closed segments until the rest fit in maxBytes. Segment names start with
+    // their creation time, so name order is age order.
+    private void enforceRetention() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> closed = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + COMPRESSED_SUFFIX)) {
+            for (Path segment : stream) {
+                closed.add(segment);
+                total += Files.size(segment);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not scan journal directory {}", directory, e);
+            return;
+        }
+        closed.sort(Comparator.comparing(segment -> segment.getFileName().toString()));
+        for (int i = 0; i < closed.size() && total > maxBytes; i++) {
+            Path oldest = closed.get(i);
+            try {
+                long size = Files.size(oldest);
+                Files.delete(oldest);
+                total -= size;
+                LOGGER.debug("Deleted journal segment {} to stay within {} bytes", oldest, maxBytes);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete old journal segment {}", oldest, e);
+            }
+        }
+    }
+
+    private static void compress(Path segment) {
+        Path target = segment.resolveSibling(segment.getFileName().toString().replace(SEGMENT_SUFFIX, COMPRESSED_SUFFIX));
+        try (InputStream in = Files.newInputStream(segment);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to compress journal segment {}; keeping it uncompressed", segment, e);
+            return;
+        }
+        try {
+            Files.delete(segment);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete compressed journal segment {}", segment, e);
+        }
+    }
+}
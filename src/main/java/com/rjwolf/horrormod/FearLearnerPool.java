@@ -0,0 +1,195 @@
+package com.rjwolf.horrormod;
+
+import net.minecraftforge.fml.loading.FMLPaths;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps DL4J start-up cost off the server thread. warmUp() loads the ND4J backend and builds
+// a template learner in the background; after that learners are cloned from the template and
+// a few spares are kept ready so a login only has to take one from the queue. A stopping server
+// shuts the pool down to free those networks; HorrorMod starts a new one for the next server.
+public class FearLearnerPool {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final BlockingQueue<AIFearLearner> spares;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "HorrorMod-LearnerPool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final Path pretrainedModel;
+    private volatile AIFearLearner template;
+    private volatile boolean shutdown;
+
+    // pretrainedModel may be null; if the file exists, every learner starts from its weights
+    public FearLearnerPool(int spareCount, Path pretrainedModel) {
+        this.spares = new ArrayBlockingQueue<>(Math.max(1, spareCount));
+        this.pretrainedModel = pretrainedModel;
+    }
+
+    public static FearLearnerPool fromConfig() {
+        String pretrained = HorrorConfig.PRETRAINED_MODEL.get();
+        return new FearLearnerPool(HorrorConfig.LEARNER_POOL_SIZE.get(),
+            pretrained.isEmpty() ? null : FMLPaths.GAMEDIR.get().resolve(pretrained));
+    }
+
+    public CompletableFuture<Void> warmUp() {
+        executor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                AIFearLearner learner = new AIFearLearner();
+                learner.initialize();
+                loadPretrained(learner);
+
+                // Run the inference and training paths once on a throwaway copy so native
+                // kernels and the Adam updater are loaded before the first player needs them
+                AIFearLearner scratch = AIFearLearner.copyOf(learner);
+                scratch.predictPlayerFears(new PlayerBehaviorData());
+                scratch.fit(new double[1][AIFearLearner.INPUT_FEATURES], new double[1][AIFearLearner.FEAR_CATEGORIES]);
+
+                verifyFastInference(learner);
+
+                template = learner;
+                refill();
+                LOGGER.info("Fear AI warmed up in {} ms on the {} backend",
+                    (System.nanoTime() - start) / 1_000_000, Nd4j.getBackend().getClass().getSimpleName());
+                ready.complete(null);
+            } catch (Throwable t) {
+                LOGGER.error("Fear AI warm-up failed", t);
+                ready.completeExceptionally(t);
+            }
+        });
+        return ready;
+    }
+
+    private void loadPretrained(AIFearLearner learner) {
+        if (pretrainedModel == null || !Files.isRegularFile(pretrainedModel)) {
+            return;
+        }
+        try {
+            if (FearCheckpoint.read(pretrainedModel, learner)) {
+                LOGGER.info("Loaded pretrained fear model {}", pretrainedModel);
+            } else {
+                LOGGER.warn("Ignoring pretrained fear model {}: made for a different feature layout", pretrainedModel);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not load pretrained fear model {}", pretrainedModel, e);
+        }
+    }
+
+    private void verifyFastInference(AIFearLearner learner) {
+        if (!FastFearNetwork.isEnabled()) {
+            return;
+        }
+        double deviation = learner.verifyFastInference(64, 10.0);
+        double tolerance = HorrorConfig.INFERENCE_TOLERANCE.get();
+        if (deviation > tolerance) {
+            LOGGER.error("Java fear inference deviates from ND4J by {} (tolerance {}); falling back to ND4J",
+                deviation, tolerance);
+            FastFearNetwork.setEnabled(false);
+        } else {
+            LOGGER.debug("Java fear inference matches ND4J within {}", deviation);
+        }
+    }
+
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return template != null;
+    }
+
+    // Never initializes a network on the calling thread. Returns null until warm-up has finished.
+    public AIFearLearner acquire() {
+        AIFearLearner learner = spares.poll();
+        if (learner == null) {
+            AIFearLearner current = template;
+            if (current == null) {
+                return null;
+            }
+            // Pool ran dry: cloning costs a parameter copy, not a network build
+            learner = AIFearLearner.copyOf(current);
+        }
+        scheduleRefill();
+        return learner;
+    }
+
+    // A fresh copy of the template network, e.g. to seed a SharedFearModel
+    public MultiLayerNetwork cloneTemplateNetwork() {
+        AIFearLearner current = template;
+        if (current == null) {
+            throw new IllegalStateException("Fear AI has not finished warming up");
+        }
+        return current.cloneNetwork();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    // Stops warm-up and refills and frees the native memory of the spares and the template.
+    // Learners already handed out stay usable; acquire returns null from now on.
+    public void shutdown(long timeoutMillis) {
+        shutdown = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                // Still copying a network; closing it underneath would crash in native code
+                LOGGER.warn("Fear learner pool did not stop within {} ms; leaving its networks to the GC", timeoutMillis);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        AIFearLearner current = template;
+        template = null;
+        AIFearLearner spare;
+        while ((spare = spares.poll()) != null) {
+            spare.close();
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void scheduleRefill() {
+        if (refillScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    refillScheduled.set(false);
+                    refill();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shut down
+                refillScheduled.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        AIFearLearner current = template;
+        while (current != null && spares.remainingCapacity() > 0) {
+            if (!spares.offer(AIFearLearner.copyOf(current))) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.rjwolf.horrormod;
+
+import java.nio.ByteBuffer;
+
+// A per-player fear predictor: either a full AIFearLearner or a small head on the shared model
+public interface FearModel {
+    // Fits one mini-batch of feature rows against their fear labels. Called off the server thread.
+    void fit(double[][] features, double[][] labels);
+
+    // A new profile per call: callers keep it in the profile cache and as the session's last profile
+    FearProfile predictPlayerFears(PlayerBehaviorData data);
+
+    // Changes whenever the weights used for prediction change (training, loading state)
+    long getModelVersion();
+
+    // Rough heap plus off-heap footprint, for stats only
+    long estimateMemoryBytes();
+
+    // Tags the saved state so a store never loads one implementation's state into another
+    byte stateKind();
+
+    byte[] saveState();
+
+    // Returns false if the state does not match this model's layout
+    boolean loadState(ByteBuffer in);
+}
@@ -0,0 +1,138 @@
+package com.rjwolf.horrormod;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Collects the players that are due for a FearProfile during a window of ticks and predicts
+// them together. Heads on the same SharedFearModel share one batched backbone pass; full
+// per-player learners have their own weights, so they are still evaluated one by one.
+// Requests whose behavior data and model are unchanged since the last prediction are answered
+// from the FearProfileCache without running the network. Server thread only.
+public class FearPredictionScheduler {
+    private final int windowTicks;
+    private final FearProfileCache cache;
+    private final Map<UUID, Request> pending = new LinkedHashMap<>();
+
+    // Reused between flushes
+    private final Map<SharedFearModel, List<Request>> byBackbone = new IdentityHashMap<>();
+    private double[][] featureRows = new double[0][];
+    private float[][] embeddingRows = new float[0][];
+
+    private long flushes;
+    private long predictions;
+
+    public FearPredictionScheduler(int windowTicks, FearProfileCache cache) {
+        this.windowTicks = Math.max(1, windowTicks);
+        this.cache = cache;
+    }
+
+    // Answers at once from the cache if nothing changed; otherwise replaces any request the
+    // player already has pending in this window
+    public void request(UUID playerId, FearModel model, PlayerBehaviorData data, Consumer<FearProfile> callback) {
+        FearProfile cached = cache.getIfCurrent(playerId, model, data);
+        if (cached != null) {
+            pending.remove(playerId);
+            callback.accept(cached);
+            return;
+        }
+        pending.put(playerId, new Request(playerId, model, data, callback));
+    }
+
+    public void cancel(UUID playerId) {
+        pending.remove(playerId);
+    }
+
+    // Called once per server tick; predicts everything collected when the window closes
+    public void onServerTick(long tick) {
+        if (tick % windowTicks == 0 && !pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        for (Request request : pending.values()) {
+            if (request.model instanceof PlayerFearHead) {
+                SharedFearModel backbone = ((PlayerFearHead) request.model).getSharedModel();
+                byBackbone.computeIfAbsent(backbone, k -> new ArrayList<>()).add(request);
+            } else {
+                long start = HorrorMetrics.start();
+                long dataVersion = request.data.getVersion();
+                long modelVersion = request.model.getModelVersion();
+                FearProfile profile = request.model.predictPlayerFears(request.data);
+                HorrorMetrics.record(HorrorMetrics.Stage.PREDICT, start);
+                cache.put(request.playerId, request.model, dataVersion, modelVersion, profile);
+                request.callback.accept(profile);
+                predictions++;
+            }
+        }
+        for (Map.Entry<SharedFearModel, List<Request>> entry : byBackbone.entrySet()) {
+            predictBatch(entry.getKey(), entry.getValue());
+        }
+        byBackbone.clear();
+        pending.clear();
+        flushes++;
+    }
+
+    private void predictBatch(SharedFearModel backbone, List<Request> requests) {
+        long start = HorrorMetrics.start();
+        int rows = requests.size();
+        ensureCapacity(rows);
+        for (int i = 0; i < rows; i++) {
+            Request request = requests.get(i);
+            BehaviorSnapshot snapshot = request.data.getSnapshot();
+            snapshot.copyTo(featureRows[i]);
+            request.dataVersion = snapshot.getVersion();
+            request.modelVersion = request.model.getModelVersion();
+        }
+        float[][] embeddings = backbone.embedBatch(featureRows, rows, embeddingRows);
+        for (int i = 0; i < rows; i++) {
+            Request request = requests.get(i);
+            FearProfile profile = ((PlayerFearHead) request.model).predictFromEmbedding(embeddings[i]);
+            cache.put(request.playerId, request.model, request.dataVersion, request.modelVersion, profile);
+            request.callback.accept(profile);
+        }
+        predictions += rows;
+        HorrorMetrics.record(HorrorMetrics.Stage.PREDICT_BATCH, start);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (featureRows.length < rows) {
+            int size = Math.max(rows, featureRows.length * 2);
+            featureRows = new double[size][PlayerBehaviorData.FEATURE_COUNT];
+            embeddingRows = new float[size][SharedFearModel.EMBEDDING_SIZE];
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    public long getPredictionCount() {
+        return predictions;
+    }
+
+    private static final class Request {
+        final UUID playerId;
+        final FearModel model;
+        final PlayerBehaviorData data;
+        final Consumer<FearProfile> callback;
+        long dataVersion;
+        long modelVersion;
+
+        Request(UUID playerId, FearModel model, PlayerBehaviorData data, Consumer<FearProfile> callback) {
+            this.playerId = playerId;
+            this.model = model;
+            this.data = data;
+            this.callback = callback;
+        }
+    }
+}
@@ -1,32 +1,38 @@
 package com.rjwolf.horrormod;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 public class FearProfile {
-    private final Map<FearType, Double> fearLevels;
+    private static final FearType[] FEAR_TYPES = FearType.values();
+
+    // Indexed by FearType ordinal
+    private final float[] fearLevels;
 
     public FearProfile(INDArray networkOutput) {
-        fearLevels = new HashMap<>();
-        
         // Convert network output to fear levels
-        double[] fearArray = networkOutput.toDoubleVector();
-        for (int i = 0; i < fearArray.length; i++) {
-            fearLevels.put(FearType.values()[i], fearArray[i]);
-        }
+        fearLevels = networkOutput.toFloatVector();
+    }
+
+    // Takes ownership of the array
+    public FearProfile(float[] levels) {
+        fearLevels = levels;
     }
 
     public double getFearLevel(FearType fearType) {
-        return fearLevels.getOrDefault(fearType, 0.0);
+        int index = fearType.ordinal();
+        return index < fearLevels.length ? fearLevels[index] : 0.0;
     }
 
     public FearType getDominantFear() {
-        return fearLevels.entrySet()
-            .stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(FearType.UNKNOWN);
+        int best = -1;
+        for (int i = 0; i < fearLevels.length; i++) {
+            if (best < 0 || fearLevels[i] > fearLevels[best]) {
+                best = i;
+            }
+        }
+        return best < 0 ? FearType.UNKNOWN : FEAR_TYPES[best];
     }
 
     public enum FearType {
@@ -42,6 +48,10 @@ public class FearProfile {
     }
 
     public Map<FearType, Double> getAllFearLevels() {
-        return new HashMap<>(fearLevels);
+        Map<FearType, Double> levels = new EnumMap<>(FearType.class);
+        for (int i = 0; i < fearLevels.length; i++) {
+            levels.put(FEAR_TYPES[i], (double) fearLevels[i]);
+        }
+        return levels;
     }
-}
\ No newline at end of file
+}
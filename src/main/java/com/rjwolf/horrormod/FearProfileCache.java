@@ -0,0 +1,74 @@
+package com.rjwolf.horrormod;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Last FearProfile per player, tagged with the behavior data version and model version it was
+// computed from. A prediction request whose versions still match is answered from here without
+// running the network. Written on the server thread; getDominantFear may be read from anywhere.
+public class FearProfileCache {
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private long hits;
+    private long misses;
+
+    // Returns null if the player's data or model changed since the cached prediction
+    public FearProfile getIfCurrent(UUID playerId, FearModel model, PlayerBehaviorData data) {
+        Entry entry = entries.get(playerId);
+        if (entry != null && entry.model == model && entry.dataVersion == data.getVersion()
+                && entry.modelVersion == model.getModelVersion()) {
+            hits++;
+            return entry.profile;
+        }
+        misses++;
+        return null;
+    }
+
+    // Versions must be read before predicting, so a concurrent fit can only make the entry stale
+    public void put(UUID playerId, FearModel model, long dataVersion, long modelVersion, FearProfile profile) {
+        entries.put(playerId, new Entry(model, dataVersion, modelVersion, profile));
+    }
+
+    // O(1); UNKNOWN until the player's first prediction
+    public FearProfile.FearType getDominantFear(UUID playerId) {
+        Entry entry = entries.get(playerId);
+        return entry != null ? entry.dominantFear : FearProfile.FearType.UNKNOWN;
+    }
+
+    public FearProfile getLastProfile(UUID playerId) {
+        Entry entry = entries.get(playerId);
+        return entry != null ? entry.profile : null;
+    }
+
+    public void remove(UUID playerId) {
+        entries.remove(playerId);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private static final class Entry {
+        final FearModel model;
+        final long dataVersion;
+        final long modelVersion;
+        final FearProfile profile;
+        final FearProfile.FearType dominantFear;
+
+        Entry(FearModel model, long dataVersion, long modelVersion, FearProfile profile) {
+            this.model = model;
+            this.dataVersion = dataVersion;
+            this.modelVersion = modelVersion;
+            this.profile = profile;
+            this.dominantFear = profile.getDominantFear();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.rjwolf.horrormod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Trains fear networks on background threads so the server tick never waits on DL4J.
+// Samples are sharded by player, so each model is only ever fitted by one worker.
+public class FearTrainingService {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public enum DropPolicy {
+        DROP_NEWEST, // reject the incoming sample
+        DROP_OLDEST  // evict the oldest queued sample to make room
+    }
+
+    private final Worker[] workers;
+    private final int maxBatchSize;
+    private final DropPolicy dropPolicy;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong trained = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public FearTrainingService(int workerCount, int queueCapacity, int maxBatchSize, DropPolicy dropPolicy) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.dropPolicy = dropPolicy;
+        this.workers = new Worker[Math.max(1, workerCount)];
+        int perWorkerCapacity = Math.max(1, queueCapacity / workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, perWorkerCapacity);
+            workers[i].start();
+        }
+    }
+
+    public static FearTrainingService fromConfig() {
+        return new FearTrainingService(
+            HorrorConfig.TRAINING_WORKERS.get(),
+            HorrorConfig.TRAINING_QUEUE_CAPACITY.get(),
+            HorrorConfig.TRAINING_BATCH_SIZE.get(),
+            HorrorConfig.TRAINING_DROP_POLICY.get());
+    }
+
+    // Never blocks. Returns false if the sample was rejected. The arrays are read on a worker
+    // thread later and must not be modified by the caller, e.g. a BehaviorSnapshot's features.
+    public boolean submit(UUID playerId, FearModel model, double[] features, double[] label) {
+        if (!running) {
+            return false;
+        }
+        submitted.incrementAndGet();
+        Sample sample = new Sample(model, features, label);
+        BlockingQueue<Sample> queue = workers[Math.floorMod(playerId.hashCode(), workers.length)].queue;
+
+        if (queue.offer(sample)) {
+            return true;
+        }
+        if (dropPolicy == DropPolicy.DROP_OLDEST) {
+            // Another producer may refill the slot in between; at worst we drop the new sample too
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+            if (queue.offer(sample)) {
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    // Stops accepting samples and gives the workers up to timeoutMillis to drain their queues
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Worker worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int discarded = 0;
+        for (Worker worker : workers) {
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+            discarded += worker.queue.size();
+            worker.queue.clear();
+        }
+        LOGGER.info("Fear training stopped: {} samples trained in {} batches, {} dropped, {} discarded at shutdown",
+            trained.get(), batches.get(), dropped.get(), discarded);
+    }
+
+    public int getQueuedSamples() {
+        int total = 0;
+        for (Worker worker : workers) {
+            total += worker.queue.size();
+        }
+        return total;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getTrainedCount() {
+        return trained.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private static final class Sample {
+        final FearModel model;
+        final double[] features;
+        final double[] label;
+
+        Sample(FearModel model, double[] features, double[] label) {
+            this.model = model;
+            this.features = features;
+            this.label = label;
+        }
+    }
+
+    private final class Worker extends Thread {
+        final BlockingQueue<Sample> queue;
+        private final List<Sample> drained;
+
+        Worker(int index, int capacity) {
+            super("HorrorMod-FearTrainer-" + index);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.drained = new ArrayList<>(maxBatchSize);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                Sample first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, maxBatchSize - 1);
+                trainGrouped();
+                drained.clear();
+            }
+        }
+
+        // One drained batch may mix players, so fit one mini-batch per model
+        private void trainGrouped() {
+            Map<FearModel, List<Sample>> byModel = new IdentityHashMap<>();
+            for (Sample sample : drained) {
+                byModel.computeIfAbsent(sample.model, k -> new ArrayList<>()).add(sample);
+            }
+            for (Map.Entry<FearModel, List<Sample>> entry : byModel.entrySet()) {
+                List<Sample> samples = entry.getValue();
+                double[][] features = new double[samples.size()][];
+                double[][] labels = new double[samples.size()][];
+                for (int i = 0; i < samples.size(); i++) {
+                    features[i] = samples.get(i).features;
+                    labels[i] = samples.get(i).label;
+                }
+                try {
+                    long start = HorrorMetrics.start();
+                    entry.getKey().fit(features, labels);
+                    HorrorMetrics.record(HorrorMetrics.Stage.NETWORK_FIT, start);
+                    TrainingMemory.recordUsage();
+                    trained.addAndGet(samples.size());
+                    batches.incrementAndGet();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Fear training batch of {} samples failed", samples.size(), e);
+                } catch (OutOfMemoryError e) {
+                    // Only JavaCPP's allocator running into training.offHeapLimitMb is survivable:
+                    // drop the batch, keep the worker. A full Java heap is not ours to swallow.
+                    if (!TrainingMemory.isOffHeapLimit(e)) {
+                        throw e;
+                    }
+                    dropped.addAndGet(samples.size());
+                    LOGGER.error("Fear training batch of {} samples dropped: {}", samples.size(), e.getMessage());
+                }
+            }
+        }
+    }
+}
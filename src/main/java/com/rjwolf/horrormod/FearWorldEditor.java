@@ -0,0 +1,338 @@
+package com.rjwolf.horrormod;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Turns a player's dominant fear into temporary block edits around them in one dimension:
+// DARKNESS and MONSTERS put out nearby lights (MONSTERS over a wider area, so mobs can spawn),
+// ENCLOSED_SPACES strings cobwebs across the floor around the player. Only the small lights in
+// the horrormod:douseable block tag are put out; taking away a structural light such as
+// glowstone or a sea lantern without neighbor updates would leave a hole in the build.
+// Edits are queued per chunk section and applied at most blocksPerTick a tick, a section at a
+// time, so the client gets one section update packet per section instead of a packet per block.
+// They skip neighbor and shape updates and never touch block entities or fluids.
+// Every applied edit remembers the block it replaced. When the effect expires, the player leaves
+// or the server stops, the original block is put back, unless the player changed the block since.
+// Server thread only.
+public class FearWorldEditor {
+    // UPDATE_CLIENTS | UPDATE_KNOWN_SHAPE | UPDATE_SUPPRESS_DROPS: sync to clients, no neighbor updates
+    private static final int FLAGS = Block.UPDATE_CLIENTS | Block.UPDATE_KNOWN_SHAPE | Block.UPDATE_SUPPRESS_DROPS;
+    // Torches, lanterns, candles, end rods: lights nothing rests on, safe to replace with air
+    private static final TagKey<Block> DOUSEABLE = BlockTags.create(new ResourceLocation(HorrorMod.MOD_ID, "douseable"));
+    private static final int DARKNESS_RADIUS = 8;
+    private static final int MONSTERS_RADIUS = 12;
+    private static final int WEB_MIN_DISTANCE = 2;
+    private static final int WEB_MAX_DISTANCE = 4;
+
+    private final ServerLevel level;
+    private final EnvironmentProbeCache cache;
+    private final EnvironmentProbeCache.BlockSampler sampler;
+    private final int blocksPerTick;
+    private final int maxEditsPerEffect;
+    private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+    // Section key -> edits waiting for that section, oldest section first
+    private final Long2ObjectLinkedOpenHashMap<List<Edit>> queue = new Long2ObjectLinkedOpenHashMap<>();
+    private final Map<UUID, Effect> effects = new HashMap<>();
+    private int queued;
+
+    private long applied;
+    private long restored;
+    private long conflicts;
+
+    public FearWorldEditor(ServerLevel level, EnvironmentProbeCache cache, EnvironmentProbeCache.BlockSampler sampler,
+                           int blocksPerTick, int maxEditsPerEffect) {
+        this.level = level;
+        this.cache = cache;
+        this.sampler = sampler;
+        this.blocksPerTick = Math.max(1, blocksPerTick);
+        this.maxEditsPerEffect = Math.max(1, maxEditsPerEffect);
+    }
+
+    public boolean hasEffect(UUID playerId) {
+        return effects.containsKey(playerId);
+    }
+
+    // Plans the edits for the fear and queues them; false if the fear has no effect or nothing
+    // around the player can be changed
+    public boolean start(UUID playerId, FearProfile.FearType fear, BlockPos center, long expiresTick) {
+        if (effects.containsKey(playerId)) {
+            return false;
+        }
+        Effect effect = new Effect(playerId, expiresTick);
+        switch (fear) {
+            case DARKNESS:
+                planDouseLights(effect, center, DARKNESS_RADIUS);
+                break;
+            case MONSTERS:
+                planDouseLights(effect, center, MONSTERS_RADIUS);
+                break;
+            case ENCLOSED_SPACES:
+                planWebs(effect, center);
+                break;
+            default:
+                return false;
+        }
+        if (effect.planned == 0) {
+            return false;
+        }
+        effects.put(playerId, effect);
+        return true;
+    }
+
+    // Queues the restore of everything the player's effect changed; edits not yet applied are dropped
+    public void rollback(UUID playerId) {
+        Effect effect = effects.remove(playerId);
+        if (effect == null) {
+            return;
+        }
+        effect.cancelled = true;
+        for (Edit edit : effect.applied) {
+            // Expect the block we placed, put the original back
+            enqueue(new Edit(null, edit.pos, edit.target, edit.expected));
+        }
+        effect.applied.clear();
+    }
+
+    // Once per server tick: expires effects, then applies queued edits within the block budget
+    public void tick(long tick) {
+        if (!effects.isEmpty()) {
+            List<UUID> expired = null;
+            for (Effect effect : effects.values()) {
+                if (tick >= effect.expiresTick) {
+                    if (expired == null) expired = new ArrayList<>();
+                    expired.add(effect.playerId);
+                }
+            }
+            if (expired != null) {
+                for (UUID playerId : expired) {
+                    rollback(playerId);
+                }
+            }
+        }
+        int budget = blocksPerTick;
+        while (budget > 0 && !queue.isEmpty()) {
+            long section = queue.firstLongKey();
+            List<Edit> edits = queue.get(section);
+            // Finish a section within the tick where possible so its changes go out in one packet
+            int count = Math.min(budget, edits.size());
+            for (int i = 0; i < count; i++) {
+                apply(edits.get(i));
+            }
+            budget -= count;
+            queued -= count;
+            if (count == edits.size()) {
+                queue.removeFirst();
+            } else {
+                edits.subList(0, count).clear();
+            }
+        }
+    }
+
+    // Puts every changed block back at once; used when the server stops
+    public void restoreAll() {
+        for (UUID playerId : new ArrayList<>(effects.keySet())) {
+            rollback(playerId);
+        }
+        for (List<Edit> edits : queue.values()) {
+            for (Edit edit : edits) {
+                apply(edit);
+            }
+        }
+        queue.clear();
+        queued = 0;
+    }
+
+    // A chunk is unloading: restore its blocks directly in the chunk so the save never holds an
+    // edit, and drop the edits still waiting there
+    public void restoreChunk(ChunkAccess chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        for (Effect effect : effects.values()) {
+            Iterator<Edit> it = effect.applied.iterator();
+            while (it.hasNext()) {
+                Edit edit = it.next();
+                if (SectionPos.blockToSectionCoord(edit.pos.getX()) == chunkPos.x
+                        && SectionPos.blockToSectionCoord(edit.pos.getZ()) == chunkPos.z) {
+                    restoreInChunk(chunk, edit.pos, edit.target, edit.expected);
+                    it.remove();
+                }
+            }
+        }
+        LongIterator sections = queue.keySet().iterator();
+        while (sections.hasNext()) {
+            long section = sections.nextLong();
+            if (SectionPos.x(section) != chunkPos.x || SectionPos.z(section) != chunkPos.z) {
+                continue;
+            }
+            for (Edit edit : queue.get(section)) {
+                if (edit.owner == null) {
+                    // A queued restore: the edit it undoes is in the chunk
+                    restoreInChunk(chunk, edit.pos, edit.expected, edit.target);
+                }
+                queued--;
+            }
+            sections.remove();
+        }
+    }
+
+    private void restoreInChunk(ChunkAccess chunk, BlockPos pos, BlockState placed, BlockState original) {
+        if (chunk.getBlockState(pos) == placed) {
+            chunk.setBlockState(pos, original, false);
+            restored++;
+        } else {
+            conflicts++;
+        }
+    }
+
+    public int getEffectCount() {
+        return effects.size();
+    }
+
+    public int getQueuedCount() {
+        return queued;
+    }
+
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    public long getRestoredCount() {
+        return restored;
+    }
+
+    public long getConflictCount() {
+        return conflicts;
+    }
+
+    private void apply(Edit edit) {
+        if (edit.owner != null && edit.owner.cancelled) {
+            return;
+        }
+        if (!level.isLoaded(edit.pos)) {
+            return;
+        }
+        // The block must still be what the edit was planned against; a player may have changed it
+        if (level.getBlockState(edit.pos) != edit.expected) {
+            conflicts++;
+            return;
+        }
+        level.setBlock(edit.pos, edit.target, FLAGS);
+        // No neighbor update means no NeighborNotifyEvent, so keep the probe cache honest here
+        cache.invalidateBlock(edit.pos.getX(), edit.pos.getY(), edit.pos.getZ());
+        if (edit.owner != null) {
+            edit.owner.applied.add(edit);
+            applied++;
+        } else {
+            restored++;
+        }
+    }
+
+    private void planDouseLights(Effect effect, BlockPos center, int radius) {
+        BlockState air = Blocks.AIR.defaultBlockState();
+        for (int dy = -radius / 2; dy <= radius / 2; dy++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    int x = center.getX() + dx;
+                    int y = center.getY() + dy;
+                    int z = center.getZ() + dz;
+                    if (cache.getLightEmission(sampler, x, y, z) == 0) {
+                        continue;
+                    }
+                    BlockState state = level.getBlockState(pos.set(x, y, z));
+                    if (!state.is(DOUSEABLE) || state.hasBlockEntity() || !state.getFluidState().isEmpty()) {
+                        continue;
+                    }
+                    if (!plan(effect, x, y, z, state, air)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void planWebs(Effect effect, BlockPos center) {
+        BlockState web = Blocks.COBWEB.defaultBlockState();
+        for (int dz = -WEB_MAX_DISTANCE; dz <= WEB_MAX_DISTANCE; dz++) {
+            for (int dx = -WEB_MAX_DISTANCE; dx <= WEB_MAX_DISTANCE; dx++) {
+                int distance = Math.max(Math.abs(dx), Math.abs(dz));
+                // A broken ring: leave every other block open so the player is hemmed in, not trapped
+                if (distance < WEB_MIN_DISTANCE || ((dx + dz) & 1) != 0) {
+                    continue;
+                }
+                int x = center.getX() + dx;
+                int y = center.getY();
+                int z = center.getZ() + dz;
+                BlockState state = level.getBlockState(pos.set(x, y, z));
+                if (!state.isAir() || !cache.isSolid(sampler, x, y - 1, z)) {
+                    continue;
+                }
+                if (!plan(effect, x, y, z, state, web)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // False once the effect has all the edits it may have
+    private boolean plan(Effect effect, int x, int y, int z, BlockState expected, BlockState target) {
+        enqueue(new Edit(effect, new BlockPos(x, y, z), expected, target));
+        return ++effect.planned < maxEditsPerEffect;
+    }
+
+    private void enqueue(Edit edit) {
+        long section = SectionPos.asLong(edit.pos);
+        List<Edit> edits = queue.get(section);
+        if (edits == null) {
+            edits = new ArrayList<>();
+            queue.put(section, edits);
+        }
+        edits.add(edit);
+        queued++;
+    }
+
+    // Replace expected with target; owner is null for restores
+    private static final class Edit {
+        final Effect owner;
+        final BlockPos pos;
+        final BlockState expected;
+        final BlockState target;
+
+        Edit(Effect owner, BlockPos pos, BlockState expected, BlockState target) {
+            this.owner = owner;
+            this.pos = pos;
+            this.expected = expected;
+            this.target = target;
+        }
+    }
+
+    private static final class Effect {
+        final UUID playerId;
+        final long expiresTick;
+        final List<Edit> applied = new ArrayList<>();
+        int planned;
+        boolean cancelled;
+
+        Effect(UUID playerId, long expiresTick) {
+            this.playerId = playerId;
+            this.expiresTick = expiresTick;
+        }
+    }
+}
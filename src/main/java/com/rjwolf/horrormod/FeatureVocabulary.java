@@ -0,0 +1,62 @@
+package com.rjwolf.horrormod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Maps registry keys (entity types, biomes, blocks) to fixed feature slots that mean the same
+// thing for every player and every run. Known keys get a dedicated slot; anything else is folded
+// into a few overflow slots by String.hashCode, which is specified and therefore stable.
+public final class FeatureVocabulary {
+    public static final FeatureVocabulary ENTITIES = new FeatureVocabulary(2,
+        "minecraft:zombie", "minecraft:skeleton", "minecraft:creeper", "minecraft:spider",
+        "minecraft:enderman", "minecraft:witch", "minecraft:drowned", "minecraft:phantom");
+
+    public static final FeatureVocabulary BIOMES = new FeatureVocabulary(2,
+        "minecraft:deep_dark", "minecraft:dark_forest", "minecraft:swamp", "minecraft:dripstone_caves",
+        "minecraft:lush_caves", "minecraft:ocean", "minecraft:plains", "minecraft:forest");
+
+    public static final FeatureVocabulary BLOCKS = new FeatureVocabulary(1,
+        "minecraft:lava", "minecraft:water", "minecraft:fire", "minecraft:cobweb");
+
+    private final String[] knownKeys;
+    private final Map<String, Integer> knownSlots = new HashMap<>();
+    private final int overflowSlots;
+    // Resolved slots by registry object; bounded by the registry size
+    private final Map<Object, Integer> slotCache = new ConcurrentHashMap<>();
+
+    private FeatureVocabulary(int overflowSlots, String... knownKeys) {
+        this.knownKeys = knownKeys;
+        this.overflowSlots = overflowSlots;
+        for (int i = 0; i < knownKeys.length; i++) {
+            knownSlots.put(knownKeys[i], i);
+        }
+    }
+
+    public int size() {
+        return knownKeys.length + overflowSlots;
+    }
+
+    // Not cached: arbitrary strings would make the cache unbounded, and resolving is one lookup
+    public int slotOf(String key) {
+        return resolve(key);
+    }
+
+    // For registry objects such as Block or EntityType; the namer is only called the first time
+    @SuppressWarnings("unchecked")
+    public <T> int slotOf(T key, Function<? super T, ?> namer) {
+        Integer slot = slotCache.get(key);
+        return slot != null ? slot : slotCache.computeIfAbsent(key, k -> resolve(String.valueOf(namer.apply((T) k))));
+    }
+
+    // Name of a dedicated slot, or null for an overflow slot
+    public String keyOf(int slot) {
+        return slot < knownKeys.length ? knownKeys[slot] : null;
+    }
+
+    private int resolve(String key) {
+        Integer known = knownSlots.get(key);
+        return known != null ? known : knownKeys.length + Math.floorMod(key.hashCode(), overflowSlots);
+    }
+}
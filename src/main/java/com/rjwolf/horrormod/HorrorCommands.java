@@ -0,0 +1,42 @@
+package com.rjwolf.horrormod;
+
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+// Operator commands: /horror stats, /horror stats json, /horror stats reset
+@Mod.EventBusSubscriber(modid = HorrorMod.MOD_ID)
+public class HorrorCommands {
+
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterCommandsEvent event) {
+        event.getDispatcher().register(Commands.literal("horror")
+            .requires(source -> source.hasPermission(2))
+            .then(Commands.literal("stats")
+                .executes(HorrorCommands::showStats)
+                .then(Commands.literal("json").executes(HorrorCommands::showJson))
+                .then(Commands.literal("reset").executes(HorrorCommands::resetStats))));
+    }
+
+    private static int showStats(CommandContext<CommandSourceStack> context) {
+        for (String line : TestEventHandler.statsReport()) {
+            context.getSource().sendSuccess(Component.literal(line), false);
+        }
+        return 1;
+    }
+
+    private static int showJson(CommandContext<CommandSourceStack> context) {
+        context.getSource().sendSuccess(Component.literal(TestEventHandler.statsJson()), false);
+        return 1;
+    }
+
+    private static int resetStats(CommandContext<CommandSourceStack> context) {
+        HorrorMetrics.reset();
+        context.getSource().sendSuccess(Component.literal("Horror AI latency stats reset"), true);
+        return 1;
+    }
+}
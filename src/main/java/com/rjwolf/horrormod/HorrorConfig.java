@@ -0,0 +1,256 @@
+package com.rjwolf.horrormod;
+
+import net.minecraftforge.common.ForgeConfigSpec;
+
+public class HorrorConfig {
+    public static final ForgeConfigSpec SPEC;
+
+    public enum InferenceBackend {
+        ND4J, // run predictions through the DL4J network
+        JAVA  // run predictions on a plain Java copy of the weights
+    }
+
+    public enum ModelMode {
+        PER_PLAYER, // every player gets a full AIFearLearner
+        SHARED      // one SharedFearModel with a small PlayerFearHead per player
+    }
+
+    // Fear model layout
+    public static final ForgeConfigSpec.EnumValue<ModelMode> MODEL_MODE;
+    public static final ForgeConfigSpec.DoubleValue HEAD_LEARNING_RATE;
+    public static final ForgeConfigSpec.IntValue LEARNER_POOL_SIZE;
+    public static final ForgeConfigSpec.EnumValue<InferenceBackend> INFERENCE_BACKEND;
+    public static final ForgeConfigSpec.DoubleValue INFERENCE_TOLERANCE;
+    public static final ForgeConfigSpec.ConfigValue<String> PRETRAINED_MODEL;
+
+    // Batched prediction
+    public static final ForgeConfigSpec.IntValue PREDICTION_WINDOW_TICKS;
+
+    // Persistence
+    public static final ForgeConfigSpec.BooleanValue PERSISTENCE_ENABLED;
+    public static final ForgeConfigSpec.IntValue AUTOSAVE_TICKS;
+
+    // Environment probes
+    public static final ForgeConfigSpec.IntValue PROBE_CACHE_MAX_AGE_TICKS;
+
+    // Tick scheduling
+    public static final ForgeConfigSpec.DoubleValue TICK_BUDGET_MS;
+    public static final ForgeConfigSpec.IntValue MAX_BACKLOG;
+
+    // Learner tiering
+    public static final ForgeConfigSpec.BooleanValue TIER_ENABLED;
+    public static final ForgeConfigSpec.IntValue TIER_IDLE_SECONDS;
+    public static final ForgeConfigSpec.IntValue TIER_HOT_MEMORY_MB;
+    public static final ForgeConfigSpec.BooleanValue TIER_KEEP_UPDATER_STATE;
+    public static final ForgeConfigSpec.BooleanValue TIER_QUANTIZE;
+
+    // Metrics
+    public enum MetricsDump {
+        OFF,
+        LOG,  // summary lines in the server log
+        JSON  // <world>/horrormod/metrics.json
+    }
+
+    public static final ForgeConfigSpec.BooleanValue METRICS_ENABLED;
+    public static final ForgeConfigSpec.EnumValue<MetricsDump> METRICS_DUMP;
+    public static final ForgeConfigSpec.IntValue METRICS_DUMP_TICKS;
+
+    // Event journal
+    public static final ForgeConfigSpec.BooleanValue JOURNAL_ENABLED;
+    public static final ForgeConfigSpec.BooleanValue JOURNAL_SNAPSHOTS;
+    public static final ForgeConfigSpec.IntValue JOURNAL_BUFFER_RECORDS;
+    public static final ForgeConfigSpec.IntValue JOURNAL_SEGMENT_MB;
+    public static final ForgeConfigSpec.IntValue JOURNAL_MAX_MB;
+    public static final ForgeConfigSpec.IntValue JOURNAL_FLUSH_MS;
+
+    // Threat scanning
+    public static final ForgeConfigSpec.BooleanValue THREAT_SCAN_ENABLED;
+    public static final ForgeConfigSpec.IntValue THREAT_SCAN_INTERVAL_TICKS;
+    public static final ForgeConfigSpec.DoubleValue THREAT_DETECTION_RADIUS;
+    public static final ForgeConfigSpec.IntValue THREAT_MAX_ENTITIES;
+
+    // World effects
+    public static final ForgeConfigSpec.BooleanValue WORLD_EFFECTS_ENABLED;
+    public static final ForgeConfigSpec.IntValue WORLD_EFFECT_INTERVAL_TICKS;
+    public static final ForgeConfigSpec.DoubleValue WORLD_EFFECT_CHANCE;
+    public static final ForgeConfigSpec.IntValue WORLD_EFFECT_DURATION_TICKS;
+    public static final ForgeConfigSpec.IntValue WORLD_EFFECT_BLOCKS_PER_TICK;
+    public static final ForgeConfigSpec.IntValue WORLD_EFFECT_MAX_EDITS;
+    public static final ForgeConfigSpec.IntValue WORLD_EFFECT_MAX_ACTIVE;
+
+    // Async training
+    public static final ForgeConfigSpec.IntValue TRAINING_WORKERS;
+    public static final ForgeConfigSpec.IntValue TRAINING_QUEUE_CAPACITY;
+    public static final ForgeConfigSpec.IntValue TRAINING_BATCH_SIZE;
+    public static final ForgeConfigSpec.EnumValue<FearTrainingService.DropPolicy> TRAINING_DROP_POLICY;
+    public static final ForgeConfigSpec.IntValue TRAINING_SHUTDOWN_TIMEOUT_MS;
+    public static final ForgeConfigSpec.IntValue TRAINING_OFF_HEAP_LIMIT_MB;
+
+    static {
+        ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
+
+        builder.comment("How fear networks are laid out across players").push("model");
+        MODEL_MODE = builder
+            .comment("PER_PLAYER trains an independent network per player, SHARED trains one backbone for everyone")
+            .defineEnum("mode", ModelMode.PER_PLAYER);
+        HEAD_LEARNING_RATE = builder
+            .comment("SGD learning rate of the per-player heads in SHARED mode")
+            .defineInRange("headLearningRate", 0.01, 0.0, 1.0);
+        LEARNER_POOL_SIZE = builder
+            .comment("Pre-initialized learners kept ready for logins in PER_PLAYER mode")
+            .defineInRange("learnerPoolSize", 4, 1, 256);
+        INFERENCE_BACKEND = builder
+            .comment("Backend used for fear predictions")
+            .defineEnum("inferenceBackend", InferenceBackend.JAVA);
+        INFERENCE_TOLERANCE = builder
+            .comment("Maximum allowed difference between JAVA and ND4J outputs; JAVA is disabled at startup if exceeded")
+            .defineInRange("inferenceTolerance", 1.0e-4, 0.0, 1.0);
+        PRETRAINED_MODEL = builder
+            .comment("Checkpoint from the offline trainer (gradlew trainFearModel), relative to the game directory; new learners start from it. Empty to disable")
+            .define("pretrainedModel", "config/horrormod/fear_model.ckpt");
+        builder.pop();
+
+        builder.comment("Periodic FearProfile prediction").push("prediction");
+        PREDICTION_WINDOW_TICKS = builder
+            .comment("Players due for prediction are collected for this many ticks and predicted in one batch")
+            .defineInRange("batchWindowTicks", 20, 1, 200);
+        builder.pop();
+
+        builder.comment("Saving learned fear data in the world folder").push("persistence");
+        PERSISTENCE_ENABLED = builder
+            .comment("Save behavior data and models on logout, autosave and server stop")
+            .define("enabled", true);
+        AUTOSAVE_TICKS = builder
+            .comment("Interval between autosaves of players whose data changed")
+            .defineInRange("autosaveTicks", 6000, 200, 72000);
+        builder.pop();
+
+        builder.comment("Shared cache of block solidity and light around players").push("probeCache");
+        PROBE_CACHE_MAX_AGE_TICKS = builder
+            .comment("Cached sections are re-read after this many ticks even if no block change event was seen")
+            .defineInRange("maxAgeTicks", 1200, 20, 72000);
+        builder.pop();
+
+        builder.comment("Per-tick time budget for the horror AI").push("scheduler");
+        TICK_BUDGET_MS = builder
+            .comment("Milliseconds of server thread time per tick; past this, normal work is deferred and ambient work is dropped")
+            .defineInRange("tickBudgetMs", 5.0, 0.1, 50.0);
+        MAX_BACKLOG = builder
+            .comment("Maximum number of deferred tasks; the oldest are dropped beyond this")
+            .defineInRange("maxBacklog", 1024, 16, 65536);
+        builder.pop();
+
+        builder.comment("Demoting idle PER_PLAYER learners to a compact inference-only form").push("tiering");
+        TIER_ENABLED = builder
+            .comment("Demote learners of players who stop producing fear signals; they are restored on the next signal")
+            .define("enabled", true);
+        TIER_IDLE_SECONDS = builder
+            .comment("Seconds without training before a learner is demoted")
+            .defineInRange("idleSeconds", 300, 10, 86400);
+        TIER_HOT_MEMORY_MB = builder
+            .comment("Estimated memory allowed for full learners; least recently trained ones are demoted beyond it")
+            .defineInRange("hotMemoryMb", 256, 1, 65536);
+        TIER_KEEP_UPDATER_STATE = builder
+            .comment("Keep the Adam moments of demoted learners; if false, training resumes with fresh optimizer state")
+            .define("keepUpdaterState", true);
+        TIER_QUANTIZE = builder
+            .comment("Store demoted learners' training state as bfloat16, halving its size at a small precision cost")
+            .define("quantize", false);
+        builder.pop();
+
+        builder.comment("Hot-path timing, shown by /horror stats").push("metrics");
+        METRICS_ENABLED = builder
+            .comment("Record latency histograms for the horror AI stages")
+            .define("enabled", true);
+        METRICS_DUMP = builder
+            .comment("Periodically write the stats to the log or to a JSON file")
+            .defineEnum("dump", MetricsDump.OFF);
+        METRICS_DUMP_TICKS = builder
+            .comment("Interval between periodic dumps")
+            .defineInRange("dumpIntervalTicks", 6000, 20, 72000);
+        builder.pop();
+
+        builder.comment("Binary journal of learning signals under <world>/horrormod/journal").push("journal");
+        JOURNAL_ENABLED = builder
+            .comment("Record every fear signal with the player's feature vector, for offline training")
+            .define("enabled", true);
+        JOURNAL_SNAPSHOTS = builder
+            .comment("Also record the feature vector at every behavior sample (once per second per player); only useful for offline training")
+            .define("snapshots", false);
+        JOURNAL_BUFFER_RECORDS = builder
+            .comment("Records buffered in memory between flushes; records are dropped when it is full")
+            .defineInRange("bufferRecords", 16384, 256, 1 << 20);
+        JOURNAL_SEGMENT_MB = builder
+            .comment("Segment size before rolling over to a new file; closed segments are gzipped")
+            .defineInRange("segmentMb", 16, 1, 1024);
+        JOURNAL_MAX_MB = builder
+            .comment("Total size of the closed segments to keep; the oldest are deleted past it")
+            .defineInRange("maxMb", 256, 1, 1 << 20);
+        JOURNAL_FLUSH_MS = builder
+            .comment("How often buffered records are written to disk")
+            .defineInRange("flushIntervalMs", 250, 10, 10000);
+        builder.pop();
+
+        builder.comment("Tracking hostile mobs near players to measure reactions and flight").push("threats");
+        THREAT_SCAN_ENABLED = builder
+            .comment("Scan for hostile mobs around each player and record how fast they run from them")
+            .define("enabled", true);
+        THREAT_SCAN_INTERVAL_TICKS = builder
+            .comment("Ticks between scans for each player; reaction times are measured at this resolution")
+            .defineInRange("scanIntervalTicks", 10, 1, 200);
+        THREAT_DETECTION_RADIUS = builder
+            .comment("Horizontal distance in blocks at which a hostile mob counts as a threat")
+            .defineInRange("detectionRadius", 16.0, 4.0, 64.0);
+        THREAT_MAX_ENTITIES = builder
+            .comment("Most mobs one scan examines and follows, which bounds its cost in crowded areas")
+            .defineInRange("maxEntitiesPerScan", 32, 1, 1024);
+        builder.pop();
+
+        builder.comment("Temporary block changes around players that play on their dominant fear").push("worldEffects");
+        WORLD_EFFECTS_ENABLED = builder
+            .comment("Put out lights or string cobwebs near players; every change is undone when the effect ends")
+            .define("enabled", true);
+        WORLD_EFFECT_INTERVAL_TICKS = builder
+            .comment("Ticks between chances to start an effect for each player")
+            .defineInRange("intervalTicks", 1200, 200, 72000);
+        WORLD_EFFECT_CHANCE = builder
+            .comment("Probability that an effect starts when a player's chance comes up")
+            .defineInRange("chance", 0.25, 0.0, 1.0);
+        WORLD_EFFECT_DURATION_TICKS = builder
+            .comment("How long an effect lasts before its blocks are restored")
+            .defineInRange("durationTicks", 1200, 20, 72000);
+        WORLD_EFFECT_BLOCKS_PER_TICK = builder
+            .comment("Most blocks changed or restored per tick in each dimension")
+            .defineInRange("blocksPerTick", 32, 1, 4096);
+        WORLD_EFFECT_MAX_EDITS = builder
+            .comment("Most blocks one effect may change")
+            .defineInRange("maxEditsPerEffect", 48, 1, 4096);
+        WORLD_EFFECT_MAX_ACTIVE = builder
+            .comment("Most effects active at once across the server")
+            .defineInRange("maxActive", 16, 1, 1024);
+        builder.pop();
+
+        builder.comment("Background training of the fear networks").push("training");
+        TRAINING_WORKERS = builder
+            .comment("Number of worker threads fitting fear networks off the server thread")
+            .defineInRange("workers", 2, 1, 32);
+        TRAINING_QUEUE_CAPACITY = builder
+            .comment("Maximum number of pending training samples across all workers")
+            .defineInRange("queueCapacity", 4096, 16, 1 << 20);
+        TRAINING_BATCH_SIZE = builder
+            .comment("Maximum number of samples a worker drains into one mini-batch")
+            .defineInRange("batchSize", 32, 1, 1024);
+        TRAINING_DROP_POLICY = builder
+            .comment("What to do with a new sample when the queue is full")
+            .defineEnum("dropPolicy", FearTrainingService.DropPolicy.DROP_OLDEST);
+        TRAINING_SHUTDOWN_TIMEOUT_MS = builder
+            .comment("How long server shutdown waits for queued samples to be trained")
+            .defineInRange("shutdownTimeoutMs", 2000, 0, 60000);
+        TRAINING_OFF_HEAP_LIMIT_MB = builder
+            .comment("Cap on ND4J's native memory in MiB; 0 uses the JVM default (the max heap size). Needs a restart")
+            .defineInRange("offHeapLimitMb", 0, 0, 1 << 20);
+        builder.pop();
+
+        SPEC = builder.build();
+    }
+}
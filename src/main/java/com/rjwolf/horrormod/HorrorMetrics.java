@@ -0,0 +1,128 @@
+package com.rjwolf.horrormod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Low-overhead counters and latency histograms for the mod's hot paths. Recording is a couple
+// of striped adds, safe from any thread. Histograms use power-of-two nanosecond buckets, so
+// percentiles are upper bounds within a factor of two.
+public final class HorrorMetrics {
+    public enum Stage {
+        PLAYER_TICK,
+        BEHAVIOR_UPDATE,
+        ENCLOSURE_CHECK,
+        THREAT_SCAN,
+        LEARN_FEAR,
+        NETWORK_FIT,
+        PREDICT,
+        PREDICT_BATCH
+    }
+
+    private static final int BUCKETS = 48;
+    private static final StageMetrics[] STAGES = new StageMetrics[Stage.values().length];
+    private static volatile boolean enabled = true;
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new StageMetrics();
+        }
+    }
+
+    private HorrorMetrics() {
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns 0 when disabled so record() can skip the second clock read
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void record(Stage stage, long startNanos) {
+        if (startNanos != 0L) {
+            STAGES[stage.ordinal()].add(System.nanoTime() - startNanos);
+        }
+    }
+
+    public static void reset() {
+        for (StageMetrics metrics : STAGES) {
+            metrics.reset();
+        }
+    }
+
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            StageMetrics m = STAGES[stage.ordinal()];
+            long count = m.count.sum();
+            if (count == 0) continue;
+            lines.add(String.format(Locale.ROOT, "%s: n=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus",
+                stage, count, m.totalNanos.sum() / 1000.0 / count,
+                m.percentile(0.50) / 1000.0, m.percentile(0.99) / 1000.0, m.max.get() / 1000.0));
+        }
+        return lines;
+    }
+
+    // {"STAGE":{"count":..,"meanNanos":..,"p50Nanos":..,"p99Nanos":..,"maxNanos":..},...}
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Stage stage : Stage.values()) {
+            StageMetrics m = STAGES[stage.ordinal()];
+            long count = m.count.sum();
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(stage).append("\":{")
+                .append("\"count\":").append(count)
+                .append(",\"meanNanos\":").append(count == 0 ? 0 : m.totalNanos.sum() / count)
+                .append(",\"p50Nanos\":").append(m.percentile(0.50))
+                .append(",\"p99Nanos\":").append(m.percentile(0.99))
+                .append(",\"maxNanos\":").append(m.max.get())
+                .append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static final class StageMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            max.accumulate(nanos);
+            // Bucket i holds durations in [2^(i-1), 2^i)
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0L, nanos))));
+        }
+
+        long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            max.reset();
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        }
+    }
+}
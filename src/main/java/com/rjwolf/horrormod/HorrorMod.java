@@ -1,7 +1,9 @@
 package com.rjwolf.horrormod;
 
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import org.apache.logging.log4j.LogManager;
@@ -12,17 +14,34 @@ public class HorrorMod {
     public static final String MOD_ID = "horrormod";
     private static final Logger LOGGER = LogManager.getLogger();
     
-    private final AIFearLearner fearLearner;
+    private static FearLearnerPool learnerPool;
 
     public HorrorMod() {
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::setup);
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(PlayerSession::register);
         MinecraftForge.EVENT_BUS.register(this);
-        
-        fearLearner = new AIFearLearner();
+        ModLoadingContext.get().registerConfig(ModConfig.Type.COMMON, HorrorConfig.SPEC);
     }
 
     private void setup(final FMLCommonSetupEvent event) {
         LOGGER.info("Initializing Horror Mod AI systems...");
-        fearLearner.initialize();
+        HorrorMetrics.setEnabled(HorrorConfig.METRICS_ENABLED.get());
+        // Must happen before ND4J loads, which is the warm-up below
+        int offHeapLimitMb = HorrorConfig.TRAINING_OFF_HEAP_LIMIT_MB.get();
+        TrainingMemory.applyOffHeapLimit(offHeapLimitMb);
+        FastFearNetwork.setEnabled(HorrorConfig.INFERENCE_BACKEND.get() == HorrorConfig.InferenceBackend.JAVA);
+        // Warm up ND4J/DL4J in the background so neither setup nor the first login waits on it
+        learnerPool = FearLearnerPool.fromConfig();
+        learnerPool.warmUp().thenRun(() -> TrainingMemory.logOffHeapLimit(offHeapLimitMb));
+    }
+
+    // A stopped server shuts its pool down; the next one in this game (reopening a singleplayer
+    // world) gets a new pool, which warms up quickly now that ND4J is loaded
+    public static synchronized FearLearnerPool getLearnerPool() {
+        if (learnerPool.isShutdown()) {
+            learnerPool = FearLearnerPool.fromConfig();
+            learnerPool.warmUp();
+        }
+        return learnerPool;
     }
 }
\ No newline at end of file
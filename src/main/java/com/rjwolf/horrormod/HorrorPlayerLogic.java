@@ -0,0 +1,232 @@
+package com.rjwolf.horrormod;
+
+import java.util.UUID;
+
+// The horror AI's per-player work: what each player tick schedules and how often, what the
+// environment and combat teach and how strongly. TestEventHandler runs it for real players and
+// the load test for scripted ones, so the load test measures the code that ships. Free of
+// Minecraft types: the player is reached through Host, the world through Dimension.
+final class HorrorPlayerLogic {
+    static final int SAMPLE_INTERVAL_TICKS = 20;
+    static final int PREDICT_INTERVAL_TICKS = 200;
+
+    static final int UNDERGROUND_Y = 50;
+    static final int DARK_LIGHT_LEVEL = 4;
+    // Solid blocks in the surrounding 3x3x3; more than ~60% counts as enclosed
+    static final int ENCLOSED_SOLID_BLOCKS = 16;
+    static final float SAFE_FALL_DISTANCE = 3.0f; // fall damage starts at 3 blocks
+
+    static final double DARKNESS_SIGNAL = 0.1;     // weak, continuous
+    static final double ENCLOSED_SIGNAL = 0.2;     // slightly stronger
+    static final double UNDERGROUND_SIGNAL = 0.05; // very weak, ambient
+    static final double ATTACKED_SIGNAL = 0.8;
+    static final double KILLED_SIGNAL = 1.0;
+
+    private HorrorPlayerLogic() {
+    }
+
+    // One kind of player: ServerPlayer on the server, a scripted player in the load test
+    interface Host<P> {
+        // Queued work can outlive the player: logged out, or replaced by a new entity
+        boolean isGone(P player);
+
+        long currentTick();
+
+        double getX(P player);
+
+        double getY(P player);
+
+        double getZ(P player);
+
+        Dimension dimensionOf(P player);
+
+        void sampleBehavior(P player, PlayerBehaviorData data);
+
+        // After a behavior sample, e.g. for the journal
+        void onSampled(P player, PlayerSession session);
+
+        void learnFear(P player, PlayerSession session, FearProfile.FearType fearType, double strength);
+
+        void startWorldEffect(P player, PlayerSession session);
+
+        void onPredicted(P player, FearProfile profile);
+
+        void onReaction(boolean fled);
+    }
+
+    // What the players of one dimension share
+    static class Dimension {
+        final EnvironmentProbeCache cache;
+        final EnvironmentProbeCache.BlockSampler sampler;
+        final HostileEntityIndex hostiles = new HostileEntityIndex();
+
+        Dimension(EnvironmentProbeCache cache, EnvironmentProbeCache.BlockSampler sampler) {
+            this.cache = cache;
+            this.sampler = sampler;
+        }
+    }
+
+    // The config values the tick reads, taken once per server tick
+    static final class Settings {
+        final boolean threatsEnabled;
+        final int threatIntervalTicks;
+        final double detectionRadius;
+        final int maxThreatEntities;
+        final boolean worldEffectsEnabled;
+        final int worldEffectIntervalTicks;
+
+        Settings(boolean threatsEnabled, int threatIntervalTicks, double detectionRadius, int maxThreatEntities,
+                 boolean worldEffectsEnabled, int worldEffectIntervalTicks) {
+            this.threatsEnabled = threatsEnabled;
+            this.threatIntervalTicks = threatIntervalTicks;
+            this.detectionRadius = detectionRadius;
+            this.maxThreatEntities = maxThreatEntities;
+            this.worldEffectsEnabled = worldEffectsEnabled;
+            this.worldEffectIntervalTicks = worldEffectIntervalTicks;
+        }
+
+        static Settings fromConfig() {
+            return new Settings(HorrorConfig.THREAT_SCAN_ENABLED.get(), HorrorConfig.THREAT_SCAN_INTERVAL_TICKS.get(),
+                HorrorConfig.THREAT_DETECTION_RADIUS.get(), HorrorConfig.THREAT_MAX_ENTITIES.get(),
+                HorrorConfig.WORLD_EFFECTS_ENABLED.get(), HorrorConfig.WORLD_EFFECT_INTERVAL_TICKS.get());
+        }
+    }
+
+    // One player's tick: submits the work that is due, staggered across players by UUID
+    static <P> void tick(Host<P> host, P player, PlayerSession session, UUID playerId, long tick,
+                         HorrorTickScheduler scheduler, FearPredictionScheduler predictions, Settings settings) {
+        long start = HorrorMetrics.start();
+        PlayerBehaviorData data = session.getData();
+
+        // Update behavior data every 20 ticks (1 second)
+        if (session.isDue(PlayerSession.Schedule.SAMPLE, playerId, tick, SAMPLE_INTERVAL_TICKS)) {
+            scheduler.submit(HorrorTickScheduler.Priority.HIGH, () -> {
+                if (host.isGone(player)) {
+                    return;
+                }
+                long updateStart = HorrorMetrics.start();
+                host.sampleBehavior(player, data);
+                HorrorMetrics.record(HorrorMetrics.Stage.BEHAVIOR_UPDATE, updateStart);
+                session.markDirty();
+                host.onSampled(player, session);
+            });
+
+            // --- Environmental Fear Learning ---
+            // May be deferred to a later tick when the budget is used up
+            scheduler.submit(HorrorTickScheduler.Priority.NORMAL, () -> learnEnvironmentalFears(host, player, session));
+
+            // Fear of being Underground: ambient, shed first when over budget
+            scheduler.submit(HorrorTickScheduler.Priority.LOW, () -> {
+                if (!host.isGone(player) && host.getY(player) < UNDERGROUND_Y) {
+                    host.learnFear(player, session, FearProfile.FearType.UNDERGROUND, UNDERGROUND_SIGNAL);
+                }
+            });
+        }
+
+        // Hostile mobs nearby: measures reaction times and flight from the shared entity index
+        if (settings.threatsEnabled
+                && session.isDue(PlayerSession.Schedule.THREAT_SCAN, playerId, tick, settings.threatIntervalTicks)) {
+            scheduler.submit(HorrorTickScheduler.Priority.NORMAL, () -> scanThreats(host, player, session, settings));
+        }
+
+        // Now and then, play on the player's last predicted fear with temporary block changes
+        if (settings.worldEffectsEnabled
+                && session.isDue(PlayerSession.Schedule.WORLD_EFFECT, playerId, tick, settings.worldEffectIntervalTicks)) {
+            scheduler.submit(HorrorTickScheduler.Priority.LOW, () -> host.startWorldEffect(player, session));
+        }
+
+        // Periodically predict the fear profile, every 10 seconds
+        if (session.isDue(PlayerSession.Schedule.PREDICT, playerId, tick, PREDICT_INTERVAL_TICKS)) {
+            FearModel model = session.getModel();
+            if (model != null && predictions != null) {
+                // Predicted together with the other players due in this window
+                predictions.request(playerId, model, data, profile -> host.onPredicted(player, profile));
+            }
+        }
+        HorrorMetrics.record(HorrorMetrics.Stage.PLAYER_TICK, start);
+    }
+
+    // The player was hurt by a mob; attacker is null when it cannot be followed
+    static <P> void onAttacked(Host<P> host, P player, PlayerSession session, ThreatTracker.Mob attacker,
+                               boolean threatsEnabled) {
+        PlayerBehaviorData data = session.getData();
+        data.recordCombatEngagement();
+        if (attacker != null) {
+            if (threatsEnabled) {
+                // The threat scanner decides whether the player runs from the attacker and how fast
+                session.getThreats().onAttacked(attacker, host.currentTick());
+            } else {
+                // No scanner to time it: whether the player is moving away right now, reaction time unknown
+                boolean fled = data.isFleeing(host.getX(player), host.getZ(player), attacker.getX(), attacker.getZ());
+                attacker.recordReaction(data, 0, fled);
+            }
+        }
+        host.learnFear(player, session, FearProfile.FearType.MONSTERS, ATTACKED_SIGNAL);
+    }
+
+    // Fear of heights from a fall; 0 below the distance that hurts
+    static double fallSignal(float distance) {
+        return distance > SAFE_FALL_DISTANCE ? Math.min(1.0, (distance - SAFE_FALL_DISTANCE) / 20.0) : 0;
+    }
+
+    static void learnFear(PlayerSession session, UUID playerId, FearProfile.FearType fearType, double strength,
+                          FearTrainingService service, FearEventJournal journal) {
+        long start = HorrorMetrics.start();
+        FearModel model = session.getModel();
+        if (model != null && service != null) {
+            PlayerBehaviorData data = session.getData();
+            double[] fearLabel = new double[FearProfile.FearType.values().length];
+            fearLabel[fearType.ordinal()] = strength;
+            data.setFearLabel(fearLabel);
+            session.markDirty();
+            // The snapshot is immutable, so the worker can train on it without a copy or a lock
+            double[] features = data.getSnapshot().features();
+            if (journal != null) {
+                journal.append(FearEventJournal.KIND_LEARN, playerId, features, fearType, strength);
+            }
+            service.submit(playerId, model, features, fearLabel);
+        }
+        HorrorMetrics.record(HorrorMetrics.Stage.LEARN_FEAR, start);
+    }
+
+    private static <P> void learnEnvironmentalFears(Host<P> host, P player, PlayerSession session) {
+        if (host.isGone(player)) {
+            return;
+        }
+        Dimension dimension = host.dimensionOf(player);
+        int x = (int) Math.floor(host.getX(player));
+        int y = (int) Math.floor(host.getY(player));
+        int z = (int) Math.floor(host.getZ(player));
+
+        // 1. Fear of Darkness
+        if (dimension.cache.getLightEmission(dimension.sampler, x, y, z) < DARK_LIGHT_LEVEL) {
+            host.learnFear(player, session, FearProfile.FearType.DARKNESS, DARKNESS_SIGNAL);
+        }
+
+        // 2. Fear of Enclosed Spaces, from the shared probe cache
+        long start = HorrorMetrics.start();
+        int solidBlocks = dimension.cache.getEnclosureScore(dimension.sampler, x, y, z);
+        HorrorMetrics.record(HorrorMetrics.Stage.ENCLOSURE_CHECK, start);
+        if (solidBlocks > ENCLOSED_SOLID_BLOCKS) {
+            host.learnFear(player, session, FearProfile.FearType.ENCLOSED_SPACES, ENCLOSED_SIGNAL);
+        }
+    }
+
+    private static <P> void scanThreats(Host<P> host, P player, PlayerSession session, Settings settings) {
+        if (host.isGone(player)) {
+            return;
+        }
+        long start = HorrorMetrics.start();
+        PlayerBehaviorData data = session.getData();
+        int resolved = session.getThreats().scan(host.dimensionOf(player).hostiles,
+            host.getX(player), host.getY(player), host.getZ(player), host.currentTick(),
+            settings.detectionRadius, settings.maxThreatEntities, (mob, reactionSeconds, fled) -> {
+                mob.recordReaction(data, reactionSeconds, fled);
+                host.onReaction(fled);
+            });
+        if (resolved > 0) {
+            session.markDirty();
+        }
+        HorrorMetrics.record(HorrorMetrics.Stage.THREAT_SCAN, start);
+    }
+}
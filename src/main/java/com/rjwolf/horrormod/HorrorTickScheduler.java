@@ -0,0 +1,121 @@
+package com.rjwolf.horrormod;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+// Runs the mod's per-player work under a per-tick time budget. Players are spread across ticks
+// by a hash of their UUID, so periodic work does not pile up on the same tick. When the budget
+// is used up, NORMAL tasks are deferred to the next tick and LOW tasks (ambient signals) are
+// shed; HIGH tasks always run. Server thread only.
+public class HorrorTickScheduler {
+    public enum Priority {
+        HIGH,   // always runs
+        NORMAL, // deferred when over budget
+        LOW     // dropped when over budget
+    }
+
+    private final long budgetNanos;
+    private final int maxBacklog;
+    private final ArrayDeque<Runnable> backlog = new ArrayDeque<>();
+    private long spentNanos;
+
+    private long executed;
+    private long deferred;
+    private long shed;
+    private long overBudgetTicks;
+    private long lastTickNanos;
+
+    public HorrorTickScheduler(double budgetMillis, int maxBacklog) {
+        this.budgetNanos = (long) (budgetMillis * 1_000_000L);
+        this.maxBacklog = Math.max(1, maxBacklog);
+    }
+
+    public static HorrorTickScheduler fromConfig() {
+        return new HorrorTickScheduler(HorrorConfig.TICK_BUDGET_MS.get(), HorrorConfig.MAX_BACKLOG.get());
+    }
+
+    // Offset in [0, period) that spreads players evenly across the period
+    public static int phaseOf(UUID playerId, int period) {
+        long h = playerId.getMostSignificantBits() ^ playerId.getLeastSignificantBits();
+        // murmur3 finalizer: UUID bits are not uniformly mixed in their low bits
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) period);
+    }
+
+    public static boolean isDue(UUID playerId, long tick, int period) {
+        return (tick + phaseOf(playerId, period)) % period == 0;
+    }
+
+    // Start of a server tick: reset the budget and catch up on deferred work, oldest first
+    public void beginTick() {
+        if (spentNanos > budgetNanos) {
+            overBudgetTicks++;
+        }
+        lastTickNanos = spentNanos;
+        spentNanos = 0;
+        int pending = backlog.size();
+        while (pending-- > 0 && hasBudget()) {
+            run(backlog.poll());
+        }
+    }
+
+    public void submit(Priority priority, Runnable task) {
+        if (priority == Priority.HIGH || hasBudget()) {
+            run(task);
+        } else if (priority == Priority.NORMAL) {
+            if (backlog.size() >= maxBacklog) {
+                backlog.poll();
+                shed++;
+            }
+            backlog.add(task);
+            deferred++;
+        } else {
+            shed++;
+        }
+    }
+
+    public void clear() {
+        backlog.clear();
+    }
+
+    public boolean hasBudget() {
+        return spentNanos < budgetNanos;
+    }
+
+    public int getBacklog() {
+        return backlog.size();
+    }
+
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    public long getDeferredCount() {
+        return deferred;
+    }
+
+    public long getShedCount() {
+        return shed;
+    }
+
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+
+    // Time spent in scheduled work during the previous tick
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    private void run(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            spentNanos += System.nanoTime() - start;
+            executed++;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.rjwolf.horrormod;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Hostile entities of one dimension bucketed by chunk, kept current from join, leave and
+// section-change events. Threat scans for every player in the dimension read the same buckets
+// instead of running their own AABB entity queries. Server thread only.
+public class HostileEntityIndex {
+    private final Long2ObjectOpenHashMap<List<ThreatTracker.Mob>> chunks = new Long2ObjectOpenHashMap<>();
+    // Entity id -> chunk key of the bucket it is in, so a move or removal finds it directly
+    private final Int2LongOpenHashMap locations = new Int2LongOpenHashMap();
+
+    public void add(ThreatTracker.Mob mob) {
+        if (locations.containsKey(mob.getId())) {
+            return;
+        }
+        long key = chunkKey(((int) Math.floor(mob.getX())) >> 4, ((int) Math.floor(mob.getZ())) >> 4);
+        locations.put(mob.getId(), key);
+        chunks.computeIfAbsent(key, k -> new ArrayList<>(4)).add(mob);
+    }
+
+    public void remove(int id) {
+        if (locations.containsKey(id)) {
+            removeFromBucket(id, locations.remove(id));
+        }
+    }
+
+    public void move(int id, int chunkX, int chunkZ) {
+        if (!locations.containsKey(id)) {
+            return;
+        }
+        long key = chunkKey(chunkX, chunkZ);
+        long old = locations.put(id, key);
+        if (old != key) {
+            ThreatTracker.Mob mob = removeFromBucket(id, old);
+            if (mob != null) {
+                chunks.computeIfAbsent(key, k -> new ArrayList<>(4)).add(mob);
+            }
+        }
+    }
+
+    // Mobs in the chunk, or null; the list is live, so do not keep it across ticks
+    public List<ThreatTracker.Mob> getChunk(int chunkX, int chunkZ) {
+        return chunks.get(chunkKey(chunkX, chunkZ));
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    // Same packing as ChunkPos.asLong
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | (chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    private ThreatTracker.Mob removeFromBucket(int id, long key) {
+        List<ThreatTracker.Mob> bucket = chunks.get(key);
+        if (bucket == null) {
+            return null;
+        }
+        ThreatTracker.Mob removed = null;
+        // Buckets hold a handful of mobs, so a swap-remove by id is cheap
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i).getId() == id) {
+                removed = bucket.get(i);
+                bucket.set(i, bucket.get(bucket.size() - 1));
+                bucket.remove(bucket.size() - 1);
+                break;
+            }
+        }
+        if (bucket.isEmpty()) {
+            chunks.remove(key);
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,109 @@
+package com.rjwolf.horrormod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Keeps the number of hot per-player learners bounded. A periodic sweep demotes every learner
+// that has not trained for idleSeconds, then demotes least recently used learners until the hot
+// set fits in the memory ceiling. Learners come back to hot on their next training signal.
+public class LearnerTierManager {
+    private final Map<UUID, TieredFearLearner> learners = new ConcurrentHashMap<>();
+    private final Supplier<AIFearLearner> learnerSource;
+    private final long idleNanos;
+    private final long hotBytesLimit;
+    private final boolean keepUpdaterState;
+    private final boolean quantize;
+
+    private long demotions;
+    private int lastHotCount;
+
+    public LearnerTierManager(Supplier<AIFearLearner> learnerSource, long idleSeconds, long hotBytesLimit,
+                              boolean keepUpdaterState, boolean quantize) {
+        this.learnerSource = learnerSource;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.hotBytesLimit = hotBytesLimit;
+        this.keepUpdaterState = keepUpdaterState;
+        this.quantize = quantize;
+    }
+
+    public static LearnerTierManager fromConfig(FearLearnerPool pool) {
+        return new LearnerTierManager(pool::acquire,
+            HorrorConfig.TIER_IDLE_SECONDS.get(),
+            HorrorConfig.TIER_HOT_MEMORY_MB.get() * 1024L * 1024L,
+            HorrorConfig.TIER_KEEP_UPDATER_STATE.get(),
+            HorrorConfig.TIER_QUANTIZE.get());
+    }
+
+    // Returns null if the pool has not finished warming up
+    public TieredFearLearner create(UUID playerId) {
+        AIFearLearner learner = learnerSource.get();
+        if (learner == null) {
+            return null;
+        }
+        TieredFearLearner tiered = new TieredFearLearner(learner, learnerSource);
+        learners.put(playerId, tiered);
+        return tiered;
+    }
+
+    public void remove(UUID playerId) {
+        learners.remove(playerId);
+    }
+
+    // Server thread
+    public void sweep() {
+        long now = System.nanoTime();
+        List<TieredFearLearner> hot = new ArrayList<>();
+        for (TieredFearLearner learner : learners.values()) {
+            if (!learner.isHot()) {
+                continue;
+            }
+            if (now - learner.getLastUsedNanos() > idleNanos && learner.demote(keepUpdaterState, quantize)) {
+                demotions++;
+            } else {
+                hot.add(learner);
+            }
+        }
+
+        long hotBytes = 0;
+        for (TieredFearLearner learner : hot) {
+            hotBytes += learner.estimateMemoryBytes();
+        }
+        if (hotBytes > hotBytesLimit) {
+            hot.sort(Comparator.comparingLong(TieredFearLearner::getLastUsedNanos));
+            for (int i = 0; i < hot.size() && hotBytes > hotBytesLimit; i++) {
+                TieredFearLearner learner = hot.get(i);
+                long bytes = learner.estimateMemoryBytes();
+                if (learner.demote(keepUpdaterState, quantize)) {
+                    demotions++;
+                    hotBytes -= bytes;
+                    hot.set(i, null);
+                }
+            }
+            hot.removeIf(learner -> learner == null);
+        }
+        lastHotCount = hot.size();
+    }
+
+    public void clear() {
+        learners.clear();
+    }
+
+    public int getLearnerCount() {
+        return learners.size();
+    }
+
+    // As of the last sweep; learners promoted since then are not counted
+    public int getHotCount() {
+        return lastHotCount;
+    }
+
+    public long getDemotionCount() {
+        return demotions;
+    }
+}
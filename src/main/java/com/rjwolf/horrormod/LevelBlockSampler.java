@@ -0,0 +1,24 @@
+package com.rjwolf.horrormod;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+
+// Reads the live world for EnvironmentProbeCache. Reuses one mutable position, so server thread only.
+public class LevelBlockSampler implements EnvironmentProbeCache.BlockSampler {
+    private final Level level;
+    private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+    public LevelBlockSampler(Level level) {
+        this.level = level;
+    }
+
+    @Override
+    public boolean isSolid(int x, int y, int z) {
+        return level.getBlockState(pos.set(x, y, z)).getMaterial().isSolid();
+    }
+
+    @Override
+    public int getLightEmission(int x, int y, int z) {
+        return level.getLightEmission(pos.set(x, y, z));
+    }
+}
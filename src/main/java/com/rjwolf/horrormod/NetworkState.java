@@ -0,0 +1,62 @@
+package com.rjwolf.horrormod;
+
+import org.deeplearning4j.nn.api.Updater;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+
+// Flat binary form of a network's trainable state: parameters followed by the updater (Adam) state.
+// Layout: int paramCount, float[paramCount], int updaterCount, float[updaterCount]
+final class NetworkState {
+    private NetworkState() {
+    }
+
+    // Caller must hold the lock that guards the network against concurrent training
+    static byte[] save(MultiLayerNetwork network) {
+        float[] params = network.params().toFloatVector();
+        INDArray updaterView = updaterState(network);
+        float[] updater = updaterView != null ? updaterView.toFloatVector() : new float[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * (params.length + updater.length));
+        buffer.putInt(params.length);
+        buffer.asFloatBuffer().put(params);
+        buffer.position(buffer.position() + 4 * params.length);
+        buffer.putInt(updater.length);
+        buffer.asFloatBuffer().put(updater);
+        return buffer.array();
+    }
+
+    // Returns false and leaves the network untouched if the stored state does not fit its layout
+    static boolean load(MultiLayerNetwork network, ByteBuffer in) {
+        int paramCount = in.getInt();
+        if (paramCount != network.numParams() || in.remaining() < 4L * paramCount + 4) {
+            return false;
+        }
+        float[] params = new float[paramCount];
+        in.asFloatBuffer().get(params);
+        in.position(in.position() + 4 * paramCount);
+
+        int updaterCount = in.getInt();
+        INDArray updaterView = updaterState(network);
+        int expectedUpdater = updaterView != null ? (int) updaterView.length() : 0;
+        float[] updater = null;
+        if (updaterCount == expectedUpdater && in.remaining() >= 4L * updaterCount) {
+            updater = new float[updaterCount];
+            in.asFloatBuffer().get(updater);
+            in.position(in.position() + 4 * updaterCount);
+        }
+
+        network.setParams(Nd4j.create(params).reshape(network.params().shape()));
+        if (updater != null && updaterView != null) {
+            updaterView.assign(Nd4j.create(updater).reshape(updaterView.shape()));
+        }
+        return true;
+    }
+
+    private static INDArray updaterState(MultiLayerNetwork network) {
+        Updater updater = network.getUpdater();
+        return updater != null ? updater.getStateViewArray() : null;
+    }
+}
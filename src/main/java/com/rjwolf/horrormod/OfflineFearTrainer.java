@@ -0,0 +1,278 @@
+package com.rjwolf.horrormod;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Headless trainer: replays LEARN records from FearEventJournal segments into an AIFearLearner
+// and writes a FearCheckpoint the mod loads at start-up (model.pretrainedModel). Runs without
+// Forge or Minecraft; see the trainFearModel Gradle task.
+//
+// Segments are streamed in a random order through a shuffle buffer, cut into mini-batches and
+// trained data-parallel: every worker fits its own batch on a copy of the network, then the
+// copies' parameters and Adam state are averaged, which is what DL4J's ParallelWrapper does
+// with an averaging frequency of 1.
+//
+// Usage: OfflineFearTrainer [options] <journal dir or segment>...
+//   --out <file>           checkpoint to write (default fear_model.ckpt)
+//   --init <file>          continue from an existing checkpoint
+//   --epochs <n>           passes over the data (default 5)
+//   --batch <n>            samples per worker mini-batch (default 64)
+//   --workers <n>          parallel network copies (default: available cores)
+//   --shuffle-buffer <n>   samples held for shuffling (default 65536)
+//   --seed <n>             shuffle seed (default 123)
+public final class OfflineFearTrainer {
+    private final int epochs;
+    private final int batchSize;
+    private final int shuffleBuffer;
+    private final Random random;
+    private final MultiLayerNetwork master;
+    private final MultiLayerNetwork[] replicas;
+    private final ExecutorService executor;
+
+    // Batches waiting for the next parallel round
+    private final List<double[][][]> round = new ArrayList<>();
+    private long samples;
+    private double scoreSum;
+    private long scoreCount;
+
+    private OfflineFearTrainer(MultiLayerNetwork master, int workers, int epochs, int batchSize, int shuffleBuffer, long seed) {
+        this.master = master;
+        this.epochs = epochs;
+        this.batchSize = batchSize;
+        this.shuffleBuffer = shuffleBuffer;
+        this.random = new Random(seed);
+        this.replicas = new MultiLayerNetwork[workers];
+        for (int i = 0; i < workers; i++) {
+            replicas[i] = master.clone();
+        }
+        this.executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "HorrorMod-OfflineTrainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path out = Paths.get("fear_model.ckpt");
+        Path init = null;
+        int epochs = 5;
+        int batchSize = 64;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int shuffleBuffer = 65536;
+        long seed = 123;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out": out = Paths.get(args[++i]); break;
+                case "--init": init = Paths.get(args[++i]); break;
+                case "--epochs": epochs = Integer.parseInt(args[++i]); break;
+                case "--batch": batchSize = Integer.parseInt(args[++i]); break;
+                case "--workers": workers = Integer.parseInt(args[++i]); break;
+                case "--shuffle-buffer": shuffleBuffer = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default: inputs.add(Paths.get(args[i]));
+            }
+        }
+        List<Path> segments = findSegments(inputs);
+        if (segments.isEmpty()) {
+            System.err.println("Usage: OfflineFearTrainer [--out file] [--init file] [--epochs n] [--batch n]"
+                + " [--workers n] [--shuffle-buffer n] [--seed n] <journal dir or segment>...");
+            System.exit(2);
+        }
+
+        AIFearLearner learner = new AIFearLearner();
+        learner.initialize();
+        if (init != null && !FearCheckpoint.read(init, learner)) {
+            System.err.println("Checkpoint " + init + " was made for a different feature layout");
+            System.exit(1);
+        }
+        System.out.printf("Training on %d segments with %d workers, batch %d, %d epochs%n",
+            segments.size(), workers, batchSize, epochs);
+
+        MultiLayerNetwork network = learner.cloneNetwork();
+        OfflineFearTrainer trainer = new OfflineFearTrainer(network, Math.max(1, workers), epochs,
+            Math.max(1, batchSize), Math.max(batchSize, shuffleBuffer), seed);
+        try {
+            trainer.train(segments);
+        } finally {
+            trainer.executor.shutdownNow();
+        }
+        learner.loadState(ByteBuffer.wrap(NetworkState.save(network)));
+        FearCheckpoint.write(out, learner);
+        System.out.println("Wrote " + out.toAbsolutePath());
+    }
+
+    private static List<Path> findSegments(List<Path> inputs) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> files = Files.list(input)) {
+                    files.filter(OfflineFearTrainer::isSegment).sorted().forEach(segments::add);
+                }
+            } else if (isSegment(input)) {
+                segments.add(input);
+            }
+        }
+        return segments;
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(FearEventJournal.SEGMENT_SUFFIX) || name.endsWith(FearEventJournal.COMPRESSED_SUFFIX);
+    }
+
+    private void train(List<Path> segments) throws IOException, InterruptedException, ExecutionException {
+        List<Path> order = new ArrayList<>(segments);
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            long start = System.nanoTime();
+            samples = 0;
+            scoreSum = 0;
+            scoreCount = 0;
+            Collections.shuffle(order, random);
+            ShuffleBuffer buffer = new ShuffleBuffer();
+            for (Path segment : order) {
+                FearEventJournal.read(segment, record -> {
+                    if (record.kind == FearEventJournal.KIND_LEARN && record.fearType >= 0
+                            && record.fearType < AIFearLearner.FEAR_CATEGORIES) {
+                        buffer.add(toSample(record));
+                    }
+                });
+            }
+            buffer.drain();
+            flushRound();
+            System.out.printf("Epoch %d: %d samples, mean score %.5f, %.1f s, workspace peak %d KiB, off-heap peak %d MiB%n",
+                epoch, samples, scoreCount > 0 ? scoreSum / scoreCount : Double.NaN, (System.nanoTime() - start) / 1e9,
+                TrainingMemory.getWorkspacePeakBytes() / 1024, TrainingMemory.getOffHeapPeakBytes() / 1024 / 1024);
+        }
+    }
+
+    // features followed by the label, the same one-hot-with-strength label learnFear builds
+    private static double[] toSample(FearEventJournal.Record record) {
+        double[] sample = new double[AIFearLearner.INPUT_FEATURES + AIFearLearner.FEAR_CATEGORIES];
+        for (int i = 0; i < AIFearLearner.INPUT_FEATURES; i++) {
+            sample[i] = record.features[i];
+        }
+        sample[AIFearLearner.INPUT_FEATURES + record.fearType] = record.strength;
+        return sample;
+    }
+
+    // Reservoir-style streaming shuffle: once full, every new sample evicts a random one
+    private final class ShuffleBuffer {
+        private final double[][] slots = new double[shuffleBuffer][];
+        private int size;
+        private final List<double[]> batch = new ArrayList<>(batchSize);
+
+        void add(double[] sample) {
+            if (size < slots.length) {
+                slots[size++] = sample;
+                return;
+            }
+            int victim = random.nextInt(size);
+            emit(slots[victim]);
+            slots[victim] = sample;
+        }
+
+        void drain() {
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                double[] swap = slots[i];
+                slots[i] = slots[j];
+                slots[j] = swap;
+            }
+            for (int i = 0; i < size; i++) {
+                emit(slots[i]);
+            }
+            size = 0;
+            if (!batch.isEmpty()) {
+                submitBatch(batch);
+                batch.clear();
+            }
+        }
+
+        private void emit(double[] sample) {
+            batch.add(sample);
+            if (batch.size() == batchSize) {
+                submitBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void submitBatch(List<double[]> batch) {
+        int rows = batch.size();
+        double[][] features = new double[rows][AIFearLearner.INPUT_FEATURES];
+        double[][] labels = new double[rows][AIFearLearner.FEAR_CATEGORIES];
+        for (int r = 0; r < rows; r++) {
+            double[] sample = batch.get(r);
+            System.arraycopy(sample, 0, features[r], 0, AIFearLearner.INPUT_FEATURES);
+            System.arraycopy(sample, AIFearLearner.INPUT_FEATURES, labels[r], 0, AIFearLearner.FEAR_CATEGORIES);
+        }
+        round.add(new double[][][] { features, labels });
+        samples += rows;
+        if (round.size() == replicas.length) {
+            try {
+                flushRound();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Offline training failed", e);
+            }
+        }
+    }
+
+    // Fits one batch per replica in parallel, then averages the replicas back into the master
+    private void flushRound() throws InterruptedException, ExecutionException {
+        if (round.isEmpty()) {
+            return;
+        }
+        int active = round.size();
+        List<Callable<Double>> tasks = new ArrayList<>(active);
+        for (int i = 0; i < active; i++) {
+            MultiLayerNetwork replica = replicas[i];
+            double[][][] batch = round.get(i);
+            tasks.add(() -> {
+                replica.fit(TrainingMemory.forCurrentThread().load(batch[0], batch[1]));
+                TrainingMemory.recordUsage();
+                return replica.score();
+            });
+        }
+        for (Future<Double> result : executor.invokeAll(tasks)) {
+            scoreSum += result.get();
+            scoreCount++;
+        }
+        round.clear();
+        average(active);
+    }
+
+    private void average(int active) {
+        INDArray params = master.params();
+        INDArray updater = master.getUpdater().getStateViewArray();
+        params.assign(replicas[0].params());
+        updater.assign(replicas[0].getUpdater().getStateViewArray());
+        for (int i = 1; i < active; i++) {
+            params.addi(replicas[i].params());
+            updater.addi(replicas[i].getUpdater().getStateViewArray());
+        }
+        params.divi(active);
+        updater.divi(active);
+        // Replicas that sat out a short final round are reset too, so every epoch starts in sync
+        for (MultiLayerNetwork replica : replicas) {
+            replica.setParams(params);
+            replica.getUpdater().getStateViewArray().assign(updater);
+        }
+    }
+}
@@ -1,135 +1,255 @@
 package com.rjwolf.horrormod;
 
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.block.Block;
-import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.registries.ForgeRegistries;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.IntSupplier;
 
 public class PlayerBehaviorData {
-    // Feature vector layout constants
-    private static final int SCALAR_METRICS_COUNT = 5;
-    private static final int ENTITY_REACTIONS_COUNT = 10;
-    private static final int BIOME_PREFERENCES_COUNT = 10;
-    private static final int BLOCK_AVOIDANCE_COUNT = 5;
+    private static final int ENTITY_SLOTS = FeatureVocabulary.ENTITIES.size();
+    private static final int BIOME_SLOTS = FeatureVocabulary.BIOMES.size();
+    private static final int BLOCK_SLOTS = FeatureVocabulary.BLOCKS.size();
+
+    // updatePlayerBehavior is called once per second
+    static final int SAMPLES_PER_MINUTE = 60;
+
+    // Window channels: per-sample signals summed by BehaviorWindows
+    private static final int CH_SPEED = 0;  // blocks per second
+    private static final int CH_JUMPS = 1;
+    private static final int CH_SNEAK = 2;  // samples spent crouching
+    private static final int CH_COMBAT = 3;
+    private static final int CH_FLED = 4;
+    private static final int CH_ENTITY = 5;
+    private static final int CH_BIOME = CH_ENTITY + ENTITY_SLOTS;
+    private static final int CH_BLOCK = CH_BIOME + BIOME_SLOTS;
+    private static final int CHANNELS = CH_BLOCK + BLOCK_SLOTS;
+
+    // Feature vector layout, every value in [0, 1]:
+    //   5 rates for each of the short (1 min), long (10 min, decayed) and session windows:
+    //     speed, jumps/min, share of time sneaking, combat/min, flights/min
+    //   entity, biome and block shares for each of the long and session windows
+    private static final int RATES_PER_WINDOW = 5;
+    private static final int SHARES_PER_WINDOW = ENTITY_SLOTS + BIOME_SLOTS + BLOCK_SLOTS;
+    private static final int SHARES_START = 3 * RATES_PER_WINDOW;
+    public static final int FEATURE_COUNT = SHARES_START + 2 * SHARES_PER_WINDOW;
+
+    // Half-saturation points: a rate equal to its scale maps to 0.5
+    private static final double SPEED_SCALE = 4.0;  // walking is ~4.3 blocks/s
+    private static final double JUMP_SCALE = 10.0;  // per minute
+    private static final double COMBAT_SCALE = 2.0; // per minute
+    private static final double FLED_SCALE = 2.0;   // per minute
+    private static final double REACTION_SCALE = 1.0; // seconds
+
+
+    // Lifetime counts indexed by FeatureVocabulary slot, kept for stats; the features come from windows
+    private final int[] blockAvoidance = new int[BLOCK_SLOTS];
+    private final int[] entityReactions = new int[ENTITY_SLOTS];
+    private final int[] biomePreferences = new int[BIOME_SLOTS];
+    private final BehaviorWindows windows = new BehaviorWindows(CHANNELS);
+    // Something was recorded since the last sample, so the sample counts as active
+    private boolean pendingActivity;
 
-    private static final int SCALAR_METRICS_START = 0;
-    private static final int ENTITY_REACTIONS_START = SCALAR_METRICS_START + SCALAR_METRICS_COUNT;
-    private static final int BIOME_PREFERENCES_START = ENTITY_REACTIONS_START + ENTITY_REACTIONS_COUNT;
-    private static final int BLOCK_AVOIDANCE_START = BIOME_PREFERENCES_START + BIOME_PREFERENCES_COUNT;
-    public static final int FEATURE_COUNT = BLOCK_AVOIDANCE_START + BLOCK_AVOIDANCE_COUNT;
-
-
-    private final Map<Block, Integer> blockAvoidance = new HashMap<>();
-    private final Map<String, Integer> entityReactions = new HashMap<>();
-    private final Map<String, Integer> biomePreferences = new HashMap<>();
-
-    private double averageMovementSpeed;
     private int jumpFrequency;
-    private int sneakDuration; // in ticks
+    private int sneakDuration; // in samples
     private int combatEngagements;
     private int fleeingInstances;
 
-    private BlockPos lastPosition;
+    private int lastX;
+    private int lastY;
+    private int lastZ;
+    // Horizontal movement over the last sample, for isFleeing
+    private int lastMoveX;
+    private int lastMoveZ;
     private long lastUpdateTime;
     private boolean lastOnGround = true;
     private double[] fearLabel;
-    private Vec3 lastMovementDirection = Vec3.ZERO;
+    // Republished after every change to a value that feeds the feature vector. The version lets
+    // callers reuse a prediction; the snapshot is what every reader off the server thread uses.
+    private volatile BehaviorSnapshot snapshot = new BehaviorSnapshot(new double[FEATURE_COUNT], 0);
 
     public void updatePlayerBehavior(Player player) {
-        // Update position and movement metrics
-        BlockPos currentPos = player.blockPosition();
-        long currentTime = System.currentTimeMillis();
+        BlockPos pos = player.blockPosition();
+        updateBehavior(System.currentTimeMillis(), pos.getX(), pos.getY(), pos.getZ(), player.isOnGround(),
+            player.getDeltaMovement().y(), player.isCrouching(), () -> {
+                Optional<ResourceKey<Biome>> biome = player.level.getBiome(pos).unwrapKey();
+                return biome.isPresent() ? FeatureVocabulary.BIOMES.slotOf(biome.get(), key -> key.location()) : -1;
+            });
+    }
+
+    // Same update from plain values, for callers without a live player such as the load test
+    public void updateBehavior(long timeMillis, int x, int y, int z, boolean onGround, double yMotion,
+                               boolean crouching, String biome) {
+        updateBehavior(timeMillis, x, y, z, onGround, yMotion, crouching,
+            () -> biome != null ? FeatureVocabulary.BIOMES.slotOf(biome) : -1);
+    }
 
+    // biomeSlot is only asked for when the player moved; -1 means unknown
+    private void updateBehavior(long currentTime, int x, int y, int z, boolean onGround, double yMotion,
+                                boolean crouching, IntSupplier biomeSlot) {
         if (lastUpdateTime == 0) {
             lastUpdateTime = currentTime;
-            lastPosition = currentPos;
-            lastOnGround = player.isOnGround();
+            lastX = x;
+            lastY = y;
+            lastZ = z;
+            lastOnGround = onGround;
             return;
         }
 
         long timeDiff = currentTime - lastUpdateTime;
         if (timeDiff <= 0) timeDiff = 1; // avoid divide by zero
 
-        if (lastPosition != null) {
-            // Calculate movement speed (blocks per millisecond -> normalize later)
-            double distance = getDistance(lastPosition, currentPos);
-            double speed = distance / (double) timeDiff;
-            updateMovementSpeed(speed);
-            
-            // Update movement direction
-            Vec3 movement = new Vec3(currentPos.getX() - lastPosition.getX(), 0, currentPos.getZ() - lastPosition.getZ());
-            if (movement.lengthSqr() > 0.1) { // Only update if there's significant horizontal movement
-                lastMovementDirection = movement.normalize();
-            }
+        // Update position and movement metrics
+        boolean moved = x != lastX || y != lastY || z != lastZ;
+        lastMoveX = x - lastX;
+        lastMoveZ = z - lastZ;
+        if (moved) {
+            double speed = getDistance(lastX, lastY, lastZ, x, y, z) * 1000.0 / timeDiff;
+            windows.add(CH_SPEED, speed);
         }
 
         // Jump detection: left ground and has upward motion
-        boolean onGround = player.isOnGround();
-        double yMotion = player.getDeltaMovement().y();
-        if (lastOnGround && !onGround && yMotion > 0.1) {
+        boolean jumped = lastOnGround && !onGround && yMotion > 0.1;
+        if (jumped) {
             jumpFrequency++;
+            windows.add(CH_JUMPS, 1);
         }
         lastOnGround = onGround;
 
-        // Sneak detection: accumulate ticks spent sneaking
-        if (player.isCrouching()) {
+        // Sneak detection: accumulate samples spent sneaking
+        if (crouching) {
             sneakDuration++;
+            windows.add(CH_SNEAK, 1);
+        }
+
+        // Record biome presence while the player is active, so AFK time does not count as a preference
+        if (moved) {
+            int slot = biomeSlot.getAsInt();
+            if (slot >= 0) {
+                biomePreferences[slot]++;
+                windows.add(CH_BIOME + slot, 1);
+            }
         }
-        
-        // Record biome presence
-        player.level.getBiome(currentPos).unwrapKey().ifPresent(key -> {
-            recordBiomePresence(key.location().toString(), 1);
-        });
 
-        lastPosition = currentPos;
+        // Windows advance in active time only: an idle player's features, and so their
+        // predictions, stay put instead of decaying toward "does nothing"
+        if (moved || jumped || crouching || pendingActivity) {
+            windows.closeSample();
+            pendingActivity = false;
+            publish();
+        }
+
+        lastX = x;
+        lastY = y;
+        lastZ = z;
         lastUpdateTime = currentTime;
     }
 
-    public boolean isFleeing(Player player, Vec3 threatPosition) {
-        if (lastMovementDirection.equals(Vec3.ZERO)) {
-            return false; // Not moving
-        }
+    // The player was moved (respawn, teleport, dimension change); the next update starts fresh
+    // instead of measuring the jump as speed
+    public void resetPosition() {
+        lastUpdateTime = 0;
+        lastMoveX = 0;
+        lastMoveZ = 0;
+    }
 
-        Vec3 playerPos = player.position();
-        Vec3 directionFromThreat = new Vec3(playerPos.x - threatPosition.x, 0, playerPos.z - threatPosition.z).normalize();
+    // Whether the player's last movement points away from the threat, within ~45 degrees.
+    // The fallback when no ThreatTracker times the reaction.
+    public boolean isFleeing(double x, double z, double threatX, double threatZ) {
+        double awayX = x - threatX;
+        double awayZ = z - threatZ;
+        double moveLength = Math.sqrt((double) lastMoveX * lastMoveX + (double) lastMoveZ * lastMoveZ);
+        double awayLength = Math.sqrt(awayX * awayX + awayZ * awayZ);
+        if (moveLength == 0 || awayLength == 0) {
+            return false;
+        }
+        return (lastMoveX * awayX + lastMoveZ * awayZ) / (moveLength * awayLength) > 0.7;
+    }
 
-        // If the player's movement direction is similar to the direction away from the threat, they are fleeing
-        // A dot product > 0.7 indicates the angle between the vectors is less than ~45 degrees
-        return lastMovementDirection.dot(directionFromThreat) > 0.7;
+    // reactionTime is the seconds from the threat showing up to the player running from it
+    public void recordEntityReaction(EntityType<?> entityType, double reactionTime, boolean fled) {
+        recordEntityReactionSlot(FeatureVocabulary.ENTITIES.slotOf(entityType, EntityType::getKey), reactionTime, fled);
     }
 
     public void recordEntityReaction(String entityType, double reactionTime, boolean fled) {
-        entityReactions.merge(entityType, fled ? 1 : 0, Integer::sum);
+        recordEntityReactionSlot(FeatureVocabulary.ENTITIES.slotOf(entityType), reactionTime, fled);
+    }
+
+    private void recordEntityReactionSlot(int slot, double reactionTime, boolean fled) {
         if (fled) {
+            entityReactions[slot]++;
             fleeingInstances++;
+            // Entity shares weigh each flight by its urgency: running at once counts twice,
+            // a flight after REACTION_SCALE seconds once, and a slow retreat less
+            windows.add(CH_ENTITY + slot, 2.0 / (1.0 + Math.max(0.0, reactionTime) / REACTION_SCALE));
+            windows.add(CH_FLED, 1);
+            recorded();
         }
     }
 
     public void recordBlockAvoidance(Block block) {
-        blockAvoidance.merge(block, 1, Integer::sum);
+        recordBlockAvoidanceSlot(FeatureVocabulary.BLOCKS.slotOf(block, b -> ForgeRegistries.BLOCKS.getKey(b)));
+    }
+
+    public void recordBlockAvoidance(String block) {
+        recordBlockAvoidanceSlot(FeatureVocabulary.BLOCKS.slotOf(block));
+    }
+
+    private void recordBlockAvoidanceSlot(int slot) {
+        blockAvoidance[slot]++;
+        windows.add(CH_BLOCK + slot, 1);
+        recorded();
     }
 
     public void recordBiomePresence(String biome, int duration) {
-        biomePreferences.merge(biome, duration, Integer::sum);
+        if (duration != 0) {
+            int slot = FeatureVocabulary.BIOMES.slotOf(biome);
+            biomePreferences[slot] += duration;
+            windows.add(CH_BIOME + slot, duration);
+            recorded();
+        }
     }
 
     public void recordCombatEngagement() {
         combatEngagements++;
+        windows.add(CH_COMBAT, 1);
+        recorded();
+    }
+
+    private void recorded() {
+        pendingActivity = true;
+        publish();
     }
 
-    private double getDistance(BlockPos pos1, BlockPos pos2) {
-        int dx = pos2.getX() - pos1.getX();
-        int dy = pos2.getY() - pos1.getY();
-        int dz = pos2.getZ() - pos1.getZ();
+    private static double getDistance(int x1, int y1, int z1, int x2, int y2, int z2) {
+        int dx = x2 - x1;
+        int dy = y2 - y1;
+        int dz = z2 - z1;
         return Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
 
-    private void updateMovementSpeed(double speed) {
-        averageMovementSpeed = (averageMovementSpeed * 0.9) + (speed * 0.1); // Exponential moving average
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    // Latest published features; safe to call from any thread
+    public BehaviorSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Server thread, after every mutation of a feature input
+    private void publish() {
+        double[] features = new double[FEATURE_COUNT];
+        computeFeatures(features);
+        snapshot = new BehaviorSnapshot(features, snapshot.getVersion() + 1);
     }
 
     public double[] getFearLabel() {
@@ -150,64 +270,160 @@ public class PlayerBehaviorData {
         this.fearLabel = label;
     }
     
-    // Convert all tracked metrics into a fixed-length feature array for the AI
+    // Copy of the latest published feature vector; safe from any thread
     public double[] toFeatureArray() {
-        double[] features = new double[FEATURE_COUNT];
+        return snapshot.toArray();
+    }
+
+    // Allocation-free variant of toFeatureArray for callers that reuse a buffer
+    public void writeFeatures(double[] features) {
+        snapshot.copyTo(features);
+    }
+
+    private void computeFeatures(double[] features) {
+        writeRates(features, 0, Window.SHORT);
+        writeRates(features, RATES_PER_WINDOW, Window.LONG);
+        writeRates(features, 2 * RATES_PER_WINDOW, Window.SESSION);
+        writeShares(features, SHARES_START, Window.LONG);
+        writeShares(features, SHARES_START + SHARES_PER_WINDOW, Window.SESSION);
+    }
 
-        // Basic scalar metrics (with simple normalization)
-        features[SCALAR_METRICS_START] = averageMovementSpeed * 1000.0; // convert to blocks/sec-ish
-        features[SCALAR_METRICS_START + 1] = jumpFrequency;
-        features[SCALAR_METRICS_START + 2] = sneakDuration;
-        features[SCALAR_METRICS_START + 3] = combatEngagements;
-        features[SCALAR_METRICS_START + 4] = fleeingInstances;
+    private enum Window { SHORT, LONG, SESSION }
 
-        // Map-based metrics: dump entity reaction counts
-        int idx = ENTITY_REACTIONS_START;
-        for (Map.Entry<String, Integer> e : entityReactions.entrySet()) {
-            if (idx >= BIOME_PREFERENCES_START) break;
-            features[idx++] = e.getValue();
+    private double sum(Window window, int channel) {
+        switch (window) {
+            case SHORT: return windows.shortSum(channel);
+            case LONG: return windows.longSum(channel);
+            default: return windows.sessionSum(channel);
         }
-        // fill remaining entity slots with 0
-        while (idx < BIOME_PREFERENCES_START) features[idx++] = 0.0;
+    }
 
-        // Biome preferences
-        idx = BIOME_PREFERENCES_START;
-        for (Map.Entry<String, Integer> e : biomePreferences.entrySet()) {
-            if (idx >= BLOCK_AVOIDANCE_START) break;
-            features[idx++] = e.getValue();
+    private double samples(Window window) {
+        switch (window) {
+            case SHORT: return windows.shortSamples();
+            case LONG: return windows.longSamples();
+            default: return windows.sessionSamples();
         }
-        while (idx < BLOCK_AVOIDANCE_START) features[idx++] = 0.0;
+    }
+
+    private void writeRates(double[] features, int start, Window window) {
+        double samples = samples(window);
+        if (samples <= 0) {
+            Arrays.fill(features, start, start + RATES_PER_WINDOW, 0.0);
+            return;
+        }
+        double perMinute = SAMPLES_PER_MINUTE / samples;
+        features[start] = squash(sum(window, CH_SPEED) / samples, SPEED_SCALE);
+        features[start + 1] = squash(sum(window, CH_JUMPS) * perMinute, JUMP_SCALE);
+        features[start + 2] = Math.min(1.0, sum(window, CH_SNEAK) / samples);
+        features[start + 3] = squash(sum(window, CH_COMBAT) * perMinute, COMBAT_SCALE);
+        features[start + 4] = squash(sum(window, CH_FLED) * perMinute, FLED_SCALE);
+    }
+
+    // Each vocabulary's counts as fractions of that vocabulary's total in the window
+    private void writeShares(double[] features, int start, Window window) {
+        writeShare(features, start, window, CH_ENTITY, ENTITY_SLOTS);
+        writeShare(features, start + ENTITY_SLOTS, window, CH_BIOME, BIOME_SLOTS);
+        writeShare(features, start + ENTITY_SLOTS + BIOME_SLOTS, window, CH_BLOCK, BLOCK_SLOTS);
+    }
 
-        // Block avoidance counts
-        idx = BLOCK_AVOIDANCE_START;
-        for (Map.Entry<Block, Integer> e : blockAvoidance.entrySet()) {
-            if (idx >= FEATURE_COUNT) break;
-            features[idx++] = e.getValue();
+    private void writeShare(double[] features, int start, Window window, int firstChannel, int slots) {
+        double total = 0;
+        for (int i = 0; i < slots; i++) {
+            total += sum(window, firstChannel + i);
         }
-        while (idx < FEATURE_COUNT) features[idx++] = 0.0;
+        for (int i = 0; i < slots; i++) {
+            features[start + i] = total > 0 ? sum(window, firstChannel + i) / total : 0.0;
+        }
+    }
 
-        return features;
+    // Maps [0, inf) onto [0, 1); value == scale gives 0.5
+    private static double squash(double value, double scale) {
+        return value / (value + scale);
     }
 
     public INDArray toINDArray() {
         return Nd4j.create(toFeatureArray()).reshape(1, FEATURE_COUNT);
     }
 
-    // Getters for all tracked metrics
-    public Map<Block, Integer> getBlockAvoidance() {
-        return blockAvoidance;
+    // Lifetime counters and the decayed 10 minute window; position tracking, the 1 minute window
+    // and the session window restart with the session.
+    // Layout: int jumps, int sneak, int combat, int fleeing, int[] entity, int[] biome, int[] block
+    // (each length-prefixed), BehaviorWindows, double[] fearLabel (length -1 if null)
+    public int serializedSize() {
+        return 4 * 4
+            + 4 * (3 + entityReactions.length + biomePreferences.length + blockAvoidance.length)
+            + windows.serializedSize()
+            + 4 + (fearLabel != null ? 8 * fearLabel.length : 0);
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putInt(jumpFrequency);
+        out.putInt(sneakDuration);
+        out.putInt(combatEngagements);
+        out.putInt(fleeingInstances);
+        writeCounts(out, entityReactions);
+        writeCounts(out, biomePreferences);
+        writeCounts(out, blockAvoidance);
+        windows.writeTo(out);
+        if (fearLabel == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(fearLabel.length);
+            for (double value : fearLabel) out.putDouble(value);
+        }
+    }
+
+    public static PlayerBehaviorData readFrom(ByteBuffer in) {
+        PlayerBehaviorData data = new PlayerBehaviorData();
+        data.jumpFrequency = in.getInt();
+        data.sneakDuration = in.getInt();
+        data.combatEngagements = in.getInt();
+        data.fleeingInstances = in.getInt();
+        readCounts(in, data.entityReactions);
+        readCounts(in, data.biomePreferences);
+        readCounts(in, data.blockAvoidance);
+        data.windows.readFrom(in);
+        data.publish();
+        int labelLength = in.getInt();
+        if (labelLength >= 0) {
+            data.fearLabel = new double[labelLength];
+            for (int i = 0; i < labelLength; i++) data.fearLabel[i] = in.getDouble();
+        }
+        return data;
+    }
+
+    private static void writeCounts(ByteBuffer out, int[] counts) {
+        out.putInt(counts.length);
+        for (int count : counts) out.putInt(count);
+    }
+
+    // Tolerates a vocabulary that grew or shrank since the data was written
+    private static void readCounts(ByteBuffer in, int[] counts) {
+        int length = in.getInt();
+        for (int i = 0; i < length; i++) {
+            int count = in.getInt();
+            if (i < counts.length) counts[i] = count;
+        }
+    }
+
+    // Getters for all tracked metrics; counts are indexed by FeatureVocabulary slot
+    public int[] getBlockAvoidance() {
+        return Arrays.copyOf(blockAvoidance, blockAvoidance.length);
     }
 
-    public Map<String, Integer> getEntityReactions() {
-        return entityReactions;
+    public int[] getEntityReactions() {
+        return Arrays.copyOf(entityReactions, entityReactions.length);
     }
 
-    public Map<String, Integer> getBiomePreferences() {
-        return biomePreferences;
+    public int[] getBiomePreferences() {
+        return Arrays.copyOf(biomePreferences, biomePreferences.length);
     }
 
+    // Blocks per second over the decayed 10 minute window of active time
     public double getAverageMovementSpeed() {
-        return averageMovementSpeed;
+        double samples = windows.longSamples();
+        return samples > 0 ? windows.longSum(CH_SPEED) / samples : 0.0;
     }
 
     public int getFleeingInstances() {
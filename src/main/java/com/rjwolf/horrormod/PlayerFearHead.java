@@ -0,0 +1,137 @@
+package com.rjwolf.horrormod;
+
+import java.nio.ByteBuffer;
+
+// Per-player softmax layer on top of the shared backbone's embedding.
+// Holds EMBEDDING_SIZE x FEAR_CATEGORIES weights plus a bias, trained with plain SGD.
+public class PlayerFearHead implements FearModel {
+    private static final int EMBEDDING_SIZE = SharedFearModel.EMBEDDING_SIZE;
+    private static final int FEAR_CATEGORIES = AIFearLearner.FEAR_CATEGORIES;
+    static final byte STATE_KIND = 2;
+    private static final ThreadLocal<float[]> EMBEDDING = ThreadLocal.withInitial(() -> new float[EMBEDDING_SIZE]);
+
+    private final SharedFearModel sharedModel;
+    private final float[] weights; // [EMBEDDING_SIZE * FEAR_CATEGORIES], row-major
+    private final float[] bias;
+    private final float learningRate;
+    private volatile long headVersion;
+
+    PlayerFearHead(SharedFearModel sharedModel, float[] weights, float[] bias, float learningRate) {
+        this.sharedModel = sharedModel;
+        this.weights = weights;
+        this.bias = bias;
+        this.learningRate = learningRate;
+    }
+
+    @Override
+    public void fit(double[][] features, double[][] labels) {
+        // Every player's samples also improve the shared representation
+        sharedModel.fitBackbone(features, labels);
+        float[][] embeddings = sharedModel.embed(features);
+
+        synchronized (this) {
+            float[] probabilities = new float[FEAR_CATEGORIES];
+            float step = learningRate / embeddings.length;
+            for (int row = 0; row < embeddings.length; row++) {
+                float[] embedding = embeddings[row];
+                forward(embedding, probabilities);
+
+                // Softmax + negative log likelihood gradient, matching DL4J for non one-hot labels
+                double labelSum = 0;
+                for (double value : labels[row]) labelSum += value;
+                for (int c = 0; c < FEAR_CATEGORIES; c++) {
+                    float delta = (float) (probabilities[c] * labelSum - labels[row][c]);
+                    bias[c] -= step * delta;
+                    for (int i = 0; i < EMBEDDING_SIZE; i++) {
+                        weights[i * FEAR_CATEGORIES + c] -= step * embedding[i] * delta;
+                    }
+                }
+            }
+            headVersion++;
+        }
+    }
+
+    @Override
+    public FearProfile predictPlayerFears(PlayerBehaviorData data) {
+        float[] embedding;
+        FastFearNetwork backbone = sharedModel.getFastNetwork();
+        if (backbone != null && FastFearNetwork.isEnabled()) {
+            embedding = EMBEDDING.get();
+            backbone.embed(data, embedding);
+        } else {
+            embedding = sharedModel.embed(new double[][] { data.toFeatureArray() })[0];
+        }
+        return predictFromEmbedding(embedding);
+    }
+
+    // Used by FearPredictionScheduler after a batched backbone pass
+    public FearProfile predictFromEmbedding(float[] embedding) {
+        float[] probabilities = new float[FEAR_CATEGORIES];
+        synchronized (this) {
+            forward(embedding, probabilities);
+        }
+        return new FearProfile(probabilities);
+    }
+
+    // Both counters only grow, so the sum changes whenever either the head or the backbone does
+    @Override
+    public long getModelVersion() {
+        return headVersion + sharedModel.getVersion();
+    }
+
+    public SharedFearModel getSharedModel() {
+        return sharedModel;
+    }
+
+    @Override
+    public long estimateMemoryBytes() {
+        return 4L * (weights.length + bias.length);
+    }
+
+    @Override
+    public byte stateKind() {
+        return STATE_KIND;
+    }
+
+    // Layout: float[weights], float[bias]
+    @Override
+    public synchronized byte[] saveState() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (weights.length + bias.length));
+        buffer.asFloatBuffer().put(weights).put(bias);
+        return buffer.array();
+    }
+
+    @Override
+    public synchronized boolean loadState(ByteBuffer in) {
+        if (in.remaining() != 4 * (weights.length + bias.length)) {
+            return false;
+        }
+        in.asFloatBuffer().get(weights).get(bias);
+        headVersion++;
+        return true;
+    }
+
+    public int getParameterCount() {
+        return weights.length + bias.length;
+    }
+
+    private void forward(float[] embedding, float[] out) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < FEAR_CATEGORIES; c++) {
+            float z = bias[c];
+            for (int i = 0; i < EMBEDDING_SIZE; i++) {
+                z += embedding[i] * weights[i * FEAR_CATEGORIES + c];
+            }
+            out[c] = z;
+            if (z > max) max = z;
+        }
+        float sum = 0;
+        for (int c = 0; c < FEAR_CATEGORIES; c++) {
+            out[c] = (float) Math.exp(out[c] - max);
+            sum += out[c];
+        }
+        for (int c = 0; c < FEAR_CATEGORIES; c++) {
+            out[c] /= sum;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.rjwolf.horrormod;
+
+import net.minecraft.core.Direction;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.player.Player;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.CapabilityToken;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.capabilities.RegisterCapabilitiesEvent;
+import net.minecraftforge.common.util.LazyOptional;
+
+import java.util.UUID;
+
+// Everything the horror AI keeps for one online player: behavior data, fear model, threat
+// tracker, stagger phases and the last predicted profile. It is attached to the ServerPlayer as
+// a capability, so tick and event handlers reach it through the entity instead of UUID maps.
+// Minecraft builds a new ServerPlayer on respawn and when leaving the End; PlayerEvent.Clone moves
+// the session onto the new entity. Not written into the player's NBT: PlayerStateStore owns
+// persistence. The Forge side lives in Provider, so the load test can create sessions without
+// Forge. Server thread only; off-thread readers use the behavior data's snapshot.
+public class PlayerSession {
+    public enum Schedule {
+        SAMPLE,
+        THREAT_SCAN,
+        WORLD_EFFECT,
+        PREDICT
+    }
+
+    private PlayerBehaviorData data = new PlayerBehaviorData();
+    private FearModel model; // null until the AI has warmed up
+    // Saved model state waiting for the model to be created after warm-up
+    private PlayerStateStore.SavedState pendingRestore;
+    private ThreatTracker threats;
+    private FearProfile lastProfile;
+    private boolean dirty;
+    // Between login and the saved state arriving from the store: nothing is sampled or saved
+    private boolean loading;
+    // Stagger phase per schedule, recomputed only when the configured period changes
+    private final int[] phases = new int[Schedule.values().length];
+    private final int[] periods = new int[Schedule.values().length];
+
+    static void register(RegisterCapabilitiesEvent event) {
+        event.register(PlayerSession.class);
+    }
+
+    // The player's session, or null for client-side players
+    public static PlayerSession get(Player player) {
+        return player.getCapability(Provider.CAPABILITY).orElse(null);
+    }
+
+    // Same stagger as HorrorTickScheduler.isDue without hashing the UUID every tick
+    public boolean isDue(Schedule schedule, UUID playerId, long tick, int period) {
+        int i = schedule.ordinal();
+        if (periods[i] != period) {
+            periods[i] = period;
+            phases[i] = HorrorTickScheduler.phaseOf(playerId, period);
+        }
+        return (tick + phases[i]) % period == 0;
+    }
+
+    void startLoading() {
+        loading = true;
+    }
+
+    boolean isLoading() {
+        return loading;
+    }
+
+    // Called once the store answered the login's load, with whatever it had for the player
+    void restore(PlayerStateStore.SavedState saved) {
+        loading = false;
+        if (saved != null) {
+            data = saved.behavior;
+            pendingRestore = saved;
+        }
+    }
+
+    // The entity was replaced: take over the old entity's session
+    void takeOver(PlayerSession old) {
+        data = old.data;
+        model = old.model;
+        pendingRestore = old.pendingRestore;
+        threats = old.threats;
+        lastProfile = old.lastProfile;
+        dirty = old.dirty;
+        loading = old.loading;
+    }
+
+    // The player moved to another place without walking there (respawn, dimension change): start
+    // position-based measurements over so the jump is not read as movement
+    void relocated() {
+        data.resetPosition();
+        if (threats != null) {
+            threats.reset();
+        }
+    }
+
+    public PlayerBehaviorData getData() {
+        return data;
+    }
+
+    public FearModel getModel() {
+        return model;
+    }
+
+    void setModel(FearModel model) {
+        this.model = model;
+    }
+
+    // The saved state for a model that has not been created yet; cleared once used
+    PlayerStateStore.SavedState takePendingRestore() {
+        PlayerStateStore.SavedState saved = pendingRestore;
+        pendingRestore = null;
+        return saved;
+    }
+
+    PlayerStateStore.SavedState getPendingRestore() {
+        return pendingRestore;
+    }
+
+    ThreatTracker getThreats() {
+        if (threats == null) {
+            threats = new ThreatTracker();
+        }
+        return threats;
+    }
+
+    // Open encounters, without creating a tracker for players never scanned
+    int getEncounterCount() {
+        return threats != null ? threats.getEncounterCount() : 0;
+    }
+
+    public FearProfile getLastProfile() {
+        return lastProfile;
+    }
+
+    void setLastProfile(FearProfile profile) {
+        lastProfile = profile;
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    // True once per change, for incremental autosave
+    boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    // Attaches one session per ServerPlayer. No invalidation listener: a removed entity already
+    // answers with an empty capability, and Clone revives it to read the old session.
+    static final class Provider implements ICapabilityProvider {
+        static final Capability<PlayerSession> CAPABILITY = CapabilityManager.get(new CapabilityToken<>() {});
+        static final ResourceLocation ID = new ResourceLocation(HorrorMod.MOD_ID, "session");
+
+        private final LazyOptional<PlayerSession> optional = LazyOptional.of(PlayerSession::new);
+
+        @Override
+        public <T> LazyOptional<T> getCapability(Capability<T> cap, Direction side) {
+            return CAPABILITY.orEmpty(cap, optional);
+        }
+    }
+}
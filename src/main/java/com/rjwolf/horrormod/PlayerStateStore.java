@@ -0,0 +1,261 @@
+package com.rjwolf.horrormod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Saves per-player behavior data and model state under <world>/horrormod in a small versioned
+// binary format. Saves are queued and written in batches by one background thread (the latest
+// request per player wins). Loads run on the same thread, so they come after any save of the
+// player already queued, and a save still pending is read instead of the older file.
+//
+// File layout (big-endian):
+//   int magic, short version, short featureCount,
+//   int behaviorLength, byte[behaviorLength]  -- PlayerBehaviorData.writeTo
+//   byte modelKind (0 = none), int modelLength, byte[modelLength]  -- FearModel.saveState
+public class PlayerStateStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x48465250; // "HFRP"
+    private static final short FORMAT_VERSION = 2; // 2: windowed behavior features
+    private static final String SHARED_MODEL_FILE = "shared_model.dat";
+
+    private final Path playerDirectory;
+    private final Path sharedModelFile;
+    private final Map<UUID, PendingSave> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "HorrorMod-Persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PlayerStateStore(Path directory) {
+        this.playerDirectory = directory.resolve("players");
+        this.sharedModelFile = directory.resolve(SHARED_MODEL_FILE);
+    }
+
+    // Server thread: copies the behavior counters now; the model is serialized on the writer thread
+    public void save(UUID playerId, PlayerBehaviorData data, FearModel model) {
+        ByteBuffer behavior = ByteBuffer.allocate(data.serializedSize());
+        data.writeTo(behavior);
+        pending.put(playerId, new PendingSave(behavior.array(), model, null));
+        scheduleFlush();
+    }
+
+    // For players whose model was never created this session: keeps the previously saved model state
+    public void save(UUID playerId, PlayerBehaviorData data, SavedState previous) {
+        ByteBuffer behavior = ByteBuffer.allocate(data.serializedSize());
+        data.writeTo(behavior);
+        pending.put(playerId, new PendingSave(behavior.array(), null, previous));
+        scheduleFlush();
+    }
+
+    public void saveSharedModel(SharedFearModel model) {
+        writer.execute(() -> {
+            try {
+                byte[] state = model.saveState();
+                ByteBuffer buffer = ByteBuffer.allocate(8 + state.length);
+                buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) PlayerBehaviorData.FEATURE_COUNT);
+                buffer.put(state);
+                writeAtomically(sharedModelFile, buffer.array());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to save shared fear model", e);
+            }
+        });
+    }
+
+    // Completes on the writer thread, with null if the player has no usable saved state
+    public CompletableFuture<SavedState> load(UUID playerId) {
+        try {
+            return CompletableFuture.supplyAsync(() -> loadNow(playerId), writer);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private SavedState loadNow(UUID playerId) {
+        try {
+            // A save not written yet (e.g. a relog right after logout) is newer than the file
+            PendingSave save = pending.get(playerId);
+            ByteBuffer in = save != null ? ByteBuffer.wrap(encode(save)) : read(playerDirectory.resolve(playerId + ".dat"));
+            if (in == null || !readHeader(in, playerId.toString())) {
+                return null;
+            }
+            ByteBuffer behavior = slice(in, in.getInt());
+            PlayerBehaviorData data = PlayerBehaviorData.readFrom(behavior);
+            byte modelKind = in.get();
+            ByteBuffer modelState = slice(in, in.getInt());
+            return new SavedState(data, modelKind, modelState);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ignoring corrupt horror AI save for {}", playerId, e);
+            return null;
+        }
+    }
+
+    public boolean loadSharedModel(SharedFearModel model) {
+        ByteBuffer in = read(sharedModelFile);
+        if (in == null || !readHeader(in, SHARED_MODEL_FILE)) {
+            return false;
+        }
+        try {
+            return model.loadState(in);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ignoring corrupt shared fear model save", e);
+            return false;
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // Writes everything still queued, then stops the writer thread
+    public void close(long timeoutMillis) {
+        scheduleFlush();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Horror AI persistence did not finish within {} ms; {} saves lost",
+                    timeoutMillis, pending.size());
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        Iterator<Map.Entry<UUID, PendingSave>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, PendingSave> entry = it.next();
+            PendingSave save = entry.getValue();
+            try {
+                writeAtomically(playerDirectory.resolve(entry.getKey() + ".dat"), encode(save));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to save horror AI state for {}", entry.getKey(), e);
+            }
+            // Dropped once written, and only if no newer save replaced it meanwhile
+            pending.remove(entry.getKey(), save);
+        }
+    }
+
+    private static byte[] encode(PendingSave save) {
+        byte[] modelState = new byte[0];
+        byte modelKind = 0;
+        if (save.model != null) {
+            modelState = save.model.saveState();
+            modelKind = save.model.stateKind();
+        } else if (save.previous != null) {
+            modelState = new byte[save.previous.modelState.remaining()];
+            save.previous.modelState.duplicate().get(modelState);
+            modelKind = save.previous.modelKind;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + save.behavior.length + 1 + 4 + modelState.length);
+        buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) PlayerBehaviorData.FEATURE_COUNT);
+        buffer.putInt(save.behavior.length).put(save.behavior);
+        buffer.put(modelKind).putInt(modelState.length).put(modelState);
+        return buffer.array();
+    }
+
+    private static boolean readHeader(ByteBuffer in, String name) {
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            LOGGER.warn("Ignoring horror AI save {}: not a save file", name);
+            return false;
+        }
+        short version = in.getShort();
+        short featureCount = in.getShort();
+        if (version != FORMAT_VERSION || featureCount != PlayerBehaviorData.FEATURE_COUNT) {
+            LOGGER.info("Ignoring horror AI save {}: format {} / {} features, expected {} / {}",
+                name, version, featureCount, FORMAT_VERSION, PlayerBehaviorData.FEATURE_COUNT);
+            return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int length) {
+        ByteBuffer slice = in.slice();
+        slice.limit(length);
+        in.position(in.position() + length);
+        return slice;
+    }
+
+    // Not memory-mapped: slices of a load outlive it in SavedState, and on Windows a live mapping
+    // makes the next save's move over the file fail until the mapping is collected. A per-player
+    // learner state with its Adam moments is well over 100 KB, which is why loads stay on the writer
+    // thread instead of the server thread.
+    private static ByteBuffer read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            LOGGER.warn("Could not read horror AI save {}", file, e);
+            return null;
+        }
+    }
+
+    // Write to a temp file and move it over the old one so a crash never leaves a torn save
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static final class SavedState {
+        public final PlayerBehaviorData behavior;
+        public final byte modelKind;
+        public final ByteBuffer modelState;
+
+        SavedState(PlayerBehaviorData behavior, byte modelKind, ByteBuffer modelState) {
+            this.behavior = behavior;
+            this.modelKind = modelKind;
+            this.modelState = modelState;
+        }
+
+        // Restores the saved model state if it was written by the same kind of model
+        public boolean restoreInto(FearModel model) {
+            return modelKind == model.stateKind() && modelState.hasRemaining()
+                && model.loadState(modelState.duplicate());
+        }
+    }
+
+    private static final class PendingSave {
+        final byte[] behavior;
+        final FearModel model;
+        final SavedState previous;
+
+        PendingSave(byte[] behavior, FearModel model, SavedState previous) {
+            this.behavior = behavior;
+            this.model = model;
+            this.previous = previous;
+        }
+    }
+}
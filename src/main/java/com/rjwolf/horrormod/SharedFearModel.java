@@ -0,0 +1,88 @@
+package com.rjwolf.horrormod;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+// One backbone network trained on every player's behavior data. Players only own a
+// PlayerFearHead on top of the backbone's last hidden layer, so per-player memory stays
+// small and a new player starts from what the backbone's own output layer already knows.
+public class SharedFearModel {
+    static final int EMBEDDING_SIZE = AIFearLearner.HIDDEN_2;
+    private static final int LAST_HIDDEN_LAYER = 1;
+    private static final int OUTPUT_LAYER = 2;
+
+    private final MultiLayerNetwork network;
+    private final float headLearningRate;
+    private volatile FastFearNetwork fastNetwork;
+    private volatile long version;
+
+    // Takes ownership of an initialized network with the AIFearLearner layout
+    public SharedFearModel(MultiLayerNetwork network, float headLearningRate) {
+        this.network = network;
+        this.headLearningRate = headLearningRate;
+        this.fastNetwork = FastFearNetwork.fromNetwork(network);
+    }
+
+    public PlayerFearHead newHead() {
+        float[] weights;
+        float[] bias;
+        synchronized (this) {
+            // Start from the global output layer so the head predicts like the shared model
+            weights = FastFearNetwork.weights(network.getLayer(OUTPUT_LAYER));
+            bias = FastFearNetwork.bias(network.getLayer(OUTPUT_LAYER));
+        }
+        return new PlayerFearHead(this, weights, bias, headLearningRate);
+    }
+
+    // Trains the backbone together with its global output layer on any player's samples
+    public synchronized void fitBackbone(double[][] features, double[][] labels) {
+        network.fit(TrainingMemory.forCurrentThread().load(features, labels));
+        fastNetwork = FastFearNetwork.fromNetwork(network);
+        version++;
+    }
+
+    // Activations of the last hidden layer, one row per feature row
+    public synchronized float[][] embed(double[][] features) {
+        List<INDArray> activations = network.feedForwardToLayer(LAST_HIDDEN_LAYER, Nd4j.create(features));
+        return activations.get(LAST_HIDDEN_LAYER + 1).toFloatMatrix();
+    }
+
+    // Embeds the first `rows` feature rows in one pass. Returns `out` on the Java backend,
+    // a freshly allocated matrix on the ND4J backend.
+    public float[][] embedBatch(double[][] features, int rows, float[][] out) {
+        FastFearNetwork fast = fastNetwork;
+        if (fast != null && FastFearNetwork.isEnabled()) {
+            fast.embedBatch(features, rows, out);
+            return out;
+        }
+        return embed(Arrays.copyOf(features, rows));
+    }
+
+    public synchronized byte[] saveState() {
+        return NetworkState.save(network);
+    }
+
+    public synchronized boolean loadState(ByteBuffer in) {
+        if (!NetworkState.load(network, in)) {
+            return false;
+        }
+        fastNetwork = FastFearNetwork.fromNetwork(network);
+        version++;
+        return true;
+    }
+
+    // Bumped on every backbone update; part of every head's model version
+    public long getVersion() {
+        return version;
+    }
+
+    // Plain Java copy of the backbone for lock-free embedding on the server thread
+    public FastFearNetwork getFastNetwork() {
+        return fastNetwork;
+    }
+}
@@ -1,100 +1,448 @@
 package com.rjwolf.horrormod;
 
+import net.minecraftforge.event.AttachCapabilitiesEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityEvent;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.living.LivingFallEvent;
 import net.minecraftforge.event.entity.living.LivingHurtEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.monster.Enemy;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
 import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.storage.LevelResource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Mod.EventBusSubscriber(modid = HorrorMod.MOD_ID)
 public class TestEventHandler {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final Map<UUID, PlayerBehaviorData> playerDataMap = new ConcurrentHashMap<>();
-    private static final Map<UUID, AIFearLearner> fearLearnerMap = new ConcurrentHashMap<>();
-    private static final Map<UUID, Integer> tickCounterMap = new ConcurrentHashMap<>();
+    // Sessions of logged-in players, for whole-server passes (autosave, stats, shutdown).
+    // Per-player paths reach the session through the player's capability instead.
+    private static final Map<UUID, PlayerSession> sessions = new ConcurrentHashMap<>();
+    private static final int BACKLOG_REPORT_TICKS = 1200;
+    static final int TIER_SWEEP_TICKS = 200;
+    private static final ServerPlayers SERVER_PLAYERS = new ServerPlayers();
+    private static long worldEffectsStarted;
+    private static long threatFlights;
+    private static long threatStands;
+    private static HorrorTickScheduler tickScheduler;
+    private static HorrorPlayerLogic.Settings playerSettings;
+    private static Path modDirectory;
+    private static volatile FearTrainingService trainingService;
+    private static volatile SharedFearModel sharedModel;
+    private static volatile LearnerTierManager tierManager;
+    private static FearPredictionScheduler predictionScheduler;
+    private static final FearProfileCache profileCache = new FearProfileCache();
+    private static long serverTicks;
+    // Scheduler counters as of the last backlog report
+    private static long reportedOverBudgetTicks;
+    private static long reportedDeferred;
+    private static long reportedShed;
+    private static final long SAVE_TIMEOUT_MS = 10_000;
+    private static final long POOL_SHUTDOWN_TIMEOUT_MS = 5_000;
+    private static volatile PlayerStateStore stateStore;
+    private static volatile FearEventJournal journal;
+    // One probe cache and hostile mob index per loaded dimension, shared by all players in it. Server thread only.
+    private static final Map<Level, LevelProbe> probeCaches = new IdentityHashMap<>();
 
     @SubscribeEvent
-    public static void onPlayerTick(TickEvent.PlayerTickEvent event) {
-        if (event.phase == TickEvent.Phase.END && event.player instanceof ServerPlayer) {
-            ServerPlayer player = (ServerPlayer) event.player;
-            UUID playerUUID = player.getUUID();
-
-            PlayerBehaviorData playerData = playerDataMap.computeIfAbsent(playerUUID, k -> new PlayerBehaviorData());
-            AIFearLearner fearLearner = fearLearnerMap.computeIfAbsent(playerUUID, k -> {
-                AIFearLearner learner = new AIFearLearner();
-                learner.initialize();
-                return learner;
+    public static void onServerStarting(ServerStartingEvent event) {
+        FearTrainingService service = FearTrainingService.fromConfig();
+        trainingService = service;
+        predictionScheduler = new FearPredictionScheduler(HorrorConfig.PREDICTION_WINDOW_TICKS.get(), profileCache);
+        tickScheduler = HorrorTickScheduler.fromConfig();
+        playerSettings = HorrorPlayerLogic.Settings.fromConfig();
+        serverTicks = 0;
+        reportedOverBudgetTicks = 0;
+        reportedDeferred = 0;
+        reportedShed = 0;
+        modDirectory = event.getServer().getWorldPath(LevelResource.ROOT).resolve(HorrorMod.MOD_ID);
+        PlayerStateStore store = null;
+        if (HorrorConfig.PERSISTENCE_ENABLED.get()) {
+            store = new PlayerStateStore(modDirectory);
+        }
+        stateStore = store;
+        if (HorrorConfig.JOURNAL_ENABLED.get()) {
+            journal = FearEventJournal.fromConfig(modDirectory.resolve("journal"));
+        }
+        if (HorrorConfig.MODEL_MODE.get() == HorrorConfig.ModelMode.PER_PLAYER && HorrorConfig.TIER_ENABLED.get()) {
+            tierManager = LearnerTierManager.fromConfig(HorrorMod.getLearnerPool());
+        }
+        if (HorrorConfig.MODEL_MODE.get() == HorrorConfig.ModelMode.SHARED) {
+            PlayerStateStore sharedStore = store;
+            FearLearnerPool pool = HorrorMod.getLearnerPool();
+            float headLearningRate = HorrorConfig.HEAD_LEARNING_RATE.get().floatValue();
+            // Runs on the warm-up thread if it is still busy; skip if this server already stopped
+            pool.whenReady().thenRun(() -> {
+                SharedFearModel model = new SharedFearModel(pool.cloneTemplateNetwork(), headLearningRate);
+                if (sharedStore != null && sharedStore.loadSharedModel(model)) {
+                    LOGGER.info("Restored shared fear model from the world save");
+                }
+                if (trainingService == service) {
+                    sharedModel = model;
+                }
             });
-            int tickCounter = tickCounterMap.getOrDefault(playerUUID, 0);
+        }
+    }
 
-            // Update behavior data every 20 ticks (1 second)
-            if (tickCounter % 20 == 0) {
-                playerData.updatePlayerBehavior(player);
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        FearTrainingService service = trainingService;
+        trainingService = null;
+        if (service != null) {
+            service.shutdown(HorrorConfig.TRAINING_SHUTDOWN_TIMEOUT_MS.get());
+        }
+        // Nothing trains now; frees the spare networks and stops refills until the next server
+        HorrorMod.getLearnerPool().shutdown(POOL_SHUTDOWN_TIMEOUT_MS);
+        // Training has stopped, so the saved models are final
+        PlayerStateStore store = stateStore;
+        stateStore = null;
+        if (store != null) {
+            for (Map.Entry<UUID, PlayerSession> entry : sessions.entrySet()) {
+                savePlayer(store, entry.getKey(), entry.getValue());
+            }
+            if (sharedModel != null) {
+                store.saveSharedModel(sharedModel);
+            }
+            store.close(SAVE_TIMEOUT_MS);
+        }
+        FearEventJournal events = journal;
+        journal = null;
+        if (events != null) {
+            events.close(SAVE_TIMEOUT_MS);
+        }
+        profileCache.clear();
+        // Put every block a world effect changed back before the worlds are saved
+        for (LevelProbe probe : probeCaches.values()) {
+            if (probe.editor != null) {
+                probe.editor.restoreAll();
+            }
+        }
+        probeCaches.clear();
+        sessions.clear();
+        sharedModel = null;
+        tierManager = null;
+        predictionScheduler = null;
+        tickScheduler = null;
+        playerSettings = null;
+    }
 
-                // --- Environmental Fear Learning ---
-                // 1. Fear of Darkness
-                if (player.level.getLightEmission(player.blockPosition()) < 4) {
-                    LOGGER.debug("Player {} is in darkness. Learning fear of DARKNESS.", player.getName().getString());
-                    learnFear(player, FearProfile.FearType.DARKNESS, 0.1); // Weak, continuous signal
-                }
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        HorrorTickScheduler scheduler = tickScheduler;
+        if (scheduler == null) {
+            return;
+        }
+        if (event.phase == TickEvent.Phase.START) {
+            playerSettings = HorrorPlayerLogic.Settings.fromConfig();
+            for (LevelProbe probe : probeCaches.values()) {
+                probe.cache.setCurrentTick(serverTicks);
+            }
+            scheduler.beginTick();
+            return;
+        }
 
-                // 2. Fear of Enclosed Spaces
-                if (isPlayerEnclosed(player)) {
-                    LOGGER.debug("Player {} is in an enclosed space. Learning fear of ENCLOSED_SPACES.", player.getName().getString());
-                    learnFear(player, FearProfile.FearType.ENCLOSED_SPACES, 0.2); // Slightly stronger signal
-                }
-                
-                // 3. Fear of being Underground
-                if (player.getY() < 50) {
-                    learnFear(player, FearProfile.FearType.UNDERGROUND, 0.05); // Very weak, ambient signal
+        long tick = serverTicks++;
+        FearPredictionScheduler predictions = predictionScheduler;
+        scheduler.submit(HorrorTickScheduler.Priority.NORMAL, () -> predictions.onServerTick(tick));
+        if (HorrorConfig.WORLD_EFFECTS_ENABLED.get()) {
+            // Not through the scheduler: a deferred editor tick would run later with a stale tick
+            // and stack on the next one, breaking the blocksPerTick budget. Its cost is bounded anyway.
+            for (LevelProbe probe : probeCaches.values()) {
+                if (probe.editor != null) {
+                    probe.editor.tick(tick);
                 }
+            }
+        }
+        LearnerTierManager tiers = tierManager;
+        if (tiers != null && tick % TIER_SWEEP_TICKS == 0) {
+            scheduler.submit(HorrorTickScheduler.Priority.NORMAL, tiers::sweep);
+        }
+        if (stateStore != null && tick > 0 && tick % HorrorConfig.AUTOSAVE_TICKS.get() == 0) {
+            autosave(stateStore);
+        }
+        if (tick > 0 && HorrorConfig.METRICS_DUMP.get() != HorrorConfig.MetricsDump.OFF
+                && tick % HorrorConfig.METRICS_DUMP_TICKS.get() == 0) {
+            dumpStats(HorrorConfig.METRICS_DUMP.get());
+        }
+        if (tick > 0 && tick % BACKLOG_REPORT_TICKS == 0) {
+            reportBacklog(scheduler);
+        }
+    }
 
+    // Warns when the scheduler fell behind during the last interval; the counters are cumulative,
+    // so compare them with the previous report
+    private static void reportBacklog(HorrorTickScheduler scheduler) {
+        long overBudget = scheduler.getOverBudgetTicks() - reportedOverBudgetTicks;
+        long deferred = scheduler.getDeferredCount() - reportedDeferred;
+        long shed = scheduler.getShedCount() - reportedShed;
+        reportedOverBudgetTicks = scheduler.getOverBudgetTicks();
+        reportedDeferred = scheduler.getDeferredCount();
+        reportedShed = scheduler.getShedCount();
+        if (overBudget > 0 || deferred > 0 || shed > 0) {
+            LOGGER.warn("Horror AI over budget in {} of the last {} ticks: {} tasks deferred, {} shed, {} still queued",
+                overBudget, BACKLOG_REPORT_TICKS, deferred, shed, scheduler.getBacklog());
+        }
+    }
+
+    // Latest predicted dominant fear, without running the network. UNKNOWN before the first prediction.
+    public static FearProfile.FearType getDominantFear(UUID playerUUID) {
+        return profileCache.getDominantFear(playerUUID);
+    }
 
-                // Periodically predict fear profile and log it
-                if (tickCounter % 200 == 0) { // Every 10 seconds
-                    if (fearLearner != null) {
-                        FearProfile fearProfile = fearLearner.predictPlayerFears(playerData);
-                        LOGGER.info("Player {}'s dominant fear: {}", player.getName().getString(), fearProfile.getDominantFear());
-                        LOGGER.debug("Full fear profile: {}", fearProfile.getAllFearLevels());
-                    }
+    // Lines for /horror stats and the periodic log dump
+    static List<String> statsReport() {
+        List<String> lines = new ArrayList<>();
+        long modelBytes = modelBytes();
+        int players = sessions.size();
+        lines.add(String.format(Locale.ROOT, "Players: %d, model memory ~%d KiB total, ~%d KiB per player (%s)",
+            players, modelBytes / 1024, players == 0 ? 0 : modelBytes / 1024 / players, HorrorConfig.MODEL_MODE.get()));
+        LearnerTierManager tiers = tierManager;
+        if (tiers != null) {
+            lines.add(String.format(Locale.ROOT, "Tiers: %d of %d learners hot at last sweep, %d demotions",
+                tiers.getHotCount(), tiers.getLearnerCount(), tiers.getDemotionCount()));
+        }
+        FearTrainingService service = trainingService;
+        if (service != null) {
+            lines.add(String.format(Locale.ROOT, "Training: %d submitted, %d trained in %d batches, %d dropped, %d queued",
+                service.getSubmittedCount(), service.getTrainedCount(), service.getBatchCount(),
+                service.getDroppedCount(), service.getQueuedSamples()));
+            lines.add(String.format(Locale.ROOT, "Training memory: workspace peak %d KiB per worker, off-heap %d MiB (peak %d MiB, limit %d MiB)",
+                TrainingMemory.getWorkspacePeakBytes() / 1024, TrainingMemory.getOffHeapBytes() / 1024 / 1024,
+                TrainingMemory.getOffHeapPeakBytes() / 1024 / 1024, TrainingMemory.getOffHeapLimitBytes() / 1024 / 1024));
+        }
+        HorrorTickScheduler scheduler = tickScheduler;
+        if (scheduler != null) {
+            lines.add(String.format(Locale.ROOT, "Scheduler: last tick %.2f ms, %d over-budget ticks, %d deferred, %d shed, backlog %d",
+                scheduler.getLastTickNanos() / 1_000_000.0, scheduler.getOverBudgetTicks(),
+                scheduler.getDeferredCount(), scheduler.getShedCount(), scheduler.getBacklog()));
+        }
+        FearPredictionScheduler predictions = predictionScheduler;
+        if (predictions != null) {
+            lines.add(String.format(Locale.ROOT, "Predictions: %d in %d batches, %d pending, %d answered from cache, %d cache misses",
+                predictions.getPredictionCount(), predictions.getFlushCount(), predictions.getPendingCount(),
+                profileCache.getHits(), profileCache.getMisses()));
+        }
+        long probeHits = 0;
+        long probeMisses = 0;
+        int probeSections = 0;
+        for (LevelProbe probe : probeCaches.values()) {
+            probeHits += probe.cache.getHits();
+            probeMisses += probe.cache.getMisses();
+            probeSections += probe.cache.getCachedSectionCount();
+        }
+        lines.add(String.format(Locale.ROOT, "Probe cache: %d sections, %d hits, %d misses", probeSections, probeHits, probeMisses));
+        if (HorrorConfig.WORLD_EFFECTS_ENABLED.get()) {
+            int effects = 0;
+            int queuedEdits = 0;
+            long appliedEdits = 0;
+            long restoredEdits = 0;
+            long conflicts = 0;
+            for (LevelProbe probe : probeCaches.values()) {
+                if (probe.editor != null) {
+                    effects += probe.editor.getEffectCount();
+                    queuedEdits += probe.editor.getQueuedCount();
+                    appliedEdits += probe.editor.getAppliedCount();
+                    restoredEdits += probe.editor.getRestoredCount();
+                    conflicts += probe.editor.getConflictCount();
                 }
             }
+            lines.add(String.format(Locale.ROOT, "World effects: %d started, %d active, %d edits queued, %d applied, %d restored, %d skipped as changed",
+                worldEffectsStarted, effects, queuedEdits, appliedEdits, restoredEdits, conflicts));
+        }
+        if (HorrorConfig.THREAT_SCAN_ENABLED.get()) {
+            int hostiles = 0;
+            int hostileChunks = 0;
+            for (LevelProbe probe : probeCaches.values()) {
+                hostiles += probe.hostiles.size();
+                hostileChunks += probe.hostiles.getChunkCount();
+            }
+            int encounters = 0;
+            for (PlayerSession session : sessions.values()) {
+                encounters += session.getEncounterCount();
+            }
+            lines.add(String.format(Locale.ROOT, "Threats: %d hostile mobs indexed in %d chunks, %d open encounters, %d flights, %d stands",
+                hostiles, hostileChunks, encounters, threatFlights, threatStands));
+        }
+        PlayerStateStore store = stateStore;
+        if (store != null) {
+            lines.add("Persistence: " + store.getPendingCount() + " saves pending");
+        }
+        FearEventJournal events = journal;
+        if (events != null) {
+            lines.add(String.format(Locale.ROOT, "Journal: %d records written, %d buffered, %d dropped, %d segments",
+                events.getWrittenCount(), events.getBufferedCount(), events.getDroppedCount(), events.getSegmentCount()));
+        }
+        lines.addAll(HorrorMetrics.report());
+        return lines;
+    }
+
+    static String statsJson() {
+        HorrorTickScheduler scheduler = tickScheduler;
+        FearTrainingService service = trainingService;
+        return "{\"players\":" + sessions.size()
+            + ",\"modelBytes\":" + modelBytes()
+            + ",\"trainingQueued\":" + (service != null ? service.getQueuedSamples() : 0)
+            + ",\"trainingDropped\":" + (service != null ? service.getDroppedCount() : 0)
+            + ",\"workspacePeakBytes\":" + TrainingMemory.getWorkspacePeakBytes()
+            + ",\"offHeapPeakBytes\":" + TrainingMemory.getOffHeapPeakBytes()
+            + ",\"schedulerBacklog\":" + (scheduler != null ? scheduler.getBacklog() : 0)
+            + ",\"schedulerShed\":" + (scheduler != null ? scheduler.getShedCount() : 0)
+            + ",\"stages\":" + HorrorMetrics.toJson() + "}";
+    }
 
-            tickCounterMap.put(playerUUID, tickCounter + 1);
+    private static long modelBytes() {
+        long modelBytes = 0;
+        for (PlayerSession session : sessions.values()) {
+            FearModel model = session.getModel();
+            if (model != null) {
+                modelBytes += model.estimateMemoryBytes();
+            }
+        }
+        return modelBytes;
+    }
+
+    private static void dumpStats(HorrorConfig.MetricsDump format) {
+        if (format == HorrorConfig.MetricsDump.LOG) {
+            for (String line : statsReport()) {
+                LOGGER.info("[horror stats] {}", line);
+            }
+            return;
+        }
+        String json = statsJson();
+        Path file = modDirectory.resolve("metrics.json");
+        // Off the server thread; a failed dump only costs one sample
+        CompletableFuture.runAsync(() -> {
+            try {
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, json);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write {}", file, e);
+            }
+        });
+    }
+
+    // Incremental: only players whose data changed since the last autosave are written
+    private static void autosave(PlayerStateStore store) {
+        int saved = 0;
+        for (Map.Entry<UUID, PlayerSession> entry : sessions.entrySet()) {
+            if (entry.getValue().takeDirty()) {
+                savePlayer(store, entry.getKey(), entry.getValue());
+                saved++;
+            }
+        }
+        if (sharedModel != null && saved > 0) {
+            store.saveSharedModel(sharedModel);
+        }
+        LOGGER.debug("Horror AI autosave queued {} players", saved);
+    }
+
+    private static void savePlayer(PlayerStateStore store, UUID playerUUID, PlayerSession session) {
+        if (session.isLoading()) {
+            // Its saved state has not arrived yet; an empty session must not overwrite it
+            return;
+        }
+        FearModel fearModel = session.getModel();
+        PlayerStateStore.SavedState unrestored = session.getPendingRestore();
+        if (fearModel == null && unrestored != null) {
+            // The model was never created this session; don't overwrite its saved state
+            store.save(playerUUID, session.getData(), unrestored);
+        } else {
+            store.save(playerUUID, session.getData(), fearModel);
         }
     }
 
     @SubscribeEvent
-    public static void onLivingHurt(LivingHurtEvent event) {
-        if (event.getEntity() instanceof Player && event.getSource().getEntity() != null) {
-            Player player = (Player) event.getEntity();
+    public static void onPlayerTick(TickEvent.PlayerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && event.player instanceof ServerPlayer) {
+            ServerPlayer player = (ServerPlayer) event.player;
+            PlayerSession session = PlayerSession.get(player);
+            HorrorTickScheduler scheduler = tickScheduler;
+            if (session == null || scheduler == null || session.isLoading()) {
+                return;
+            }
             UUID playerUUID = player.getUUID();
-            PlayerBehaviorData playerData = playerDataMap.get(playerUUID);
+            if (session.getModel() == null) {
+                createFearModel(playerUUID, session);
+            }
+            HorrorPlayerLogic.tick(SERVER_PLAYERS, player, session, playerUUID, serverTicks, scheduler,
+                predictionScheduler, playerSettings);
+        }
+    }
+
+    // Queued work can outlive the entity: the player logged out, or respawned as a new entity
+    private static boolean isGone(ServerPlayer player) {
+        return player.hasDisconnected() || player.isRemoved();
+    }
+
+    private static void startWorldEffect(ServerPlayer player, PlayerSession session) {
+        if (isGone(player) || player.getRandom().nextDouble() >= HorrorConfig.WORLD_EFFECT_CHANCE.get()) {
+            return;
+        }
+        FearProfile profile = session.getLastProfile();
+        FearProfile.FearType fear = profile != null ? profile.getDominantFear() : FearProfile.FearType.UNKNOWN;
+        if (fear == FearProfile.FearType.UNKNOWN) {
+            return;
+        }
+        int active = 0;
+        for (LevelProbe probe : probeCaches.values()) {
+            if (probe.editor != null) {
+                if (probe.editor.hasEffect(player.getUUID())) {
+                    return;
+                }
+                active += probe.editor.getEffectCount();
+            }
+        }
+        FearWorldEditor editor = probeFor(player.level).editor;
+        if (editor != null && active < HorrorConfig.WORLD_EFFECT_MAX_ACTIVE.get()
+                && editor.start(player.getUUID(), fear, player.blockPosition(), serverTicks + HorrorConfig.WORLD_EFFECT_DURATION_TICKS.get())) {
+            worldEffectsStarted++;
+            LOGGER.debug("Started {} world effect for {}", fear, player.getName().getString());
+        }
+    }
 
-            if (playerData != null) {
-                String attackerName = event.getSource().getEntity().getName().getString();
-                LOGGER.info("Player {} was hurt by {}. Learning fear of MONSTERS.", player.getName().getString(), attackerName);
-                
-                // Record the combat event
-                playerData.recordCombatEngagement();
-                
-                // Check if the player is fleeing
-                boolean isFleeing = playerData.isFleeing(player, event.getSource().getEntity().position());
-                playerData.recordEntityReaction(attackerName, 0, isFleeing);
+    @SubscribeEvent
+    public static void onLivingHurt(LivingHurtEvent event) {
+        if (event.getEntity() instanceof ServerPlayer && event.getSource().getEntity() != null) {
+            ServerPlayer player = (ServerPlayer) event.getEntity();
+            PlayerSession session = PlayerSession.get(player);
 
-                learnFear(player, FearProfile.FearType.MONSTERS, 0.8); // Strong signal for monster fear
+            if (session != null) {
+                Entity attacker = event.getSource().getEntity();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Player {} was hurt by {}. Learning fear of MONSTERS.",
+                        player.getName().getString(), attacker.getName().getString());
+                }
+                HorrorPlayerLogic.onAttacked(SERVER_PLAYERS, player, session, new EntityMob(attacker),
+                    HorrorConfig.THREAT_SCAN_ENABLED.get());
             }
         }
     }
@@ -104,10 +452,11 @@ public class TestEventHandler {
         if (event.getEntity() instanceof Player) {
             Player player = (Player) event.getEntity();
             float distance = event.getDistance();
-            if (distance > 3.0f) { // Fall damage starts at 3 blocks
-                LOGGER.info("Player {} fell {} blocks. Learning fear of HEIGHTS.", player.getName().getString(), distance);
-                double fearSignal = Math.min(1.0, (distance - 3.0) / 20.0); // Normalize fear signal based on fall distance
-                learnFear(player, FearProfile.FearType.HEIGHTS, fearSignal);
+            if (distance > HorrorPlayerLogic.SAFE_FALL_DISTANCE) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Player {} fell {} blocks. Learning fear of HEIGHTS.", player.getName().getString(), distance);
+                }
+                learnFear(player, FearProfile.FearType.HEIGHTS, HorrorPlayerLogic.fallSignal(distance));
             }
         }
     }
@@ -116,52 +465,271 @@ public class TestEventHandler {
     public static void onLivingDeath(LivingDeathEvent event) {
         if (event.getEntity() instanceof Player) {
             Player player = (Player) event.getEntity();
-            LOGGER.info("Player {} died. Applying strong fear signals based on cause.", player.getName().getString());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Player {} died. Applying strong fear signals based on cause.", player.getName().getString());
+            }
             // Example: if killed by a monster, max out monster fear
             if (event.getSource().getEntity() != null) {
-                learnFear(player, FearProfile.FearType.MONSTERS, 1.0);
+                learnFear(player, FearProfile.FearType.MONSTERS, HorrorPlayerLogic.KILLED_SIGNAL);
             }
             // TODO: Add more death-related fear signals (drowning, fire, etc.)
         }
     }
 
     private static void learnFear(Player player, FearProfile.FearType fearType, double strength) {
-        UUID playerUUID = player.getUUID();
-        PlayerBehaviorData playerData = playerDataMap.get(playerUUID);
-        AIFearLearner fearLearner = fearLearnerMap.get(playerUUID);
+        PlayerSession session = PlayerSession.get(player);
+        if (session != null) {
+            HorrorPlayerLogic.learnFear(session, player.getUUID(), fearType, strength, trainingService, journal);
+        }
+    }
 
-        if (playerData != null && fearLearner != null) {
-            double[] fearLabel = new double[FearProfile.FearType.values().length];
-            fearLabel[fearType.ordinal()] = strength;
-            playerData.setFearLabel(fearLabel);
-            fearLearner.learnFromPlayerBehavior(playerData);
+    // Returns null while the AI is still warming up; callers retry on a later tick
+    private static FearModel createFearModel(UUID playerUUID, PlayerSession session) {
+        FearModel model;
+        if (HorrorConfig.MODEL_MODE.get() == HorrorConfig.ModelMode.SHARED) {
+            SharedFearModel shared = sharedModel;
+            model = shared != null ? shared.newHead() : null;
+        } else {
+            LearnerTierManager tiers = tierManager;
+            model = tiers != null ? tiers.create(playerUUID) : HorrorMod.getLearnerPool().acquire();
         }
+        if (model == null) {
+            return null;
+        }
+        PlayerStateStore.SavedState saved = session.takePendingRestore();
+        if (saved != null && saved.restoreInto(model)) {
+            LOGGER.debug("Restored saved fear model for {}", playerUUID);
+        }
+        session.setModel(model);
+        return model;
+    }
+
+    private static LevelProbe probeFor(Level level) {
+        return probeCaches.computeIfAbsent(level, LevelProbe::new);
     }
 
-    private static boolean isPlayerEnclosed(Player player) {
-        Level world = player.level;
-        BlockPos playerPos = player.blockPosition();
-        int solidBlocks = 0;
-        for (BlockPos pos : BlockPos.betweenClosed(playerPos.offset(-1, 0, -1), playerPos.offset(1, 2, 1))) {
-            if (world.getBlockState(pos).getMaterial().isSolid()) {
-                solidBlocks++;
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        if (!event.getLevel().isClientSide() && event.getLevel() instanceof Level) {
+            LevelProbe probe = probeCaches.get((Level) event.getLevel());
+            if (probe != null) {
+                BlockPos pos = event.getPos();
+                probe.cache.invalidateBlock(pos.getX(), pos.getY(), pos.getZ());
             }
         }
-        // If more than ~60% of the surrounding 3x3x3 area is solid, consider it enclosed
-        return solidBlocks > 16;
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (!event.getLevel().isClientSide() && event.getLevel() instanceof Level) {
+            LevelProbe probe = probeCaches.get((Level) event.getLevel());
+            if (probe != null) {
+                probe.cache.invalidateChunk(event.getChunk().getPos().x, event.getChunk().getPos().z);
+                if (probe.editor != null) {
+                    probe.editor.restoreChunk(event.getChunk());
+                }
+            }
+        }
+    }
+
+    // Lowest priority, so an entity whose join another mod cancels is never indexed
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onEntityJoinLevel(EntityJoinLevelEvent event) {
+        if (!event.getLevel().isClientSide() && event.getEntity() instanceof Enemy && HorrorConfig.THREAT_SCAN_ENABLED.get()) {
+            probeFor(event.getLevel()).hostiles.add(new EntityMob(event.getEntity()));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onEntityLeaveLevel(EntityLeaveLevelEvent event) {
+        if (!event.getLevel().isClientSide() && event.getEntity() instanceof Enemy) {
+            LevelProbe probe = probeCaches.get(event.getLevel());
+            if (probe != null) {
+                probe.hostiles.remove(event.getEntity().getId());
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onEnteringSection(EntityEvent.EnteringSection event) {
+        Entity entity = event.getEntity();
+        if (event.didChunkChange() && entity instanceof Enemy && !entity.level.isClientSide()) {
+            LevelProbe probe = probeCaches.get(entity.level);
+            if (probe != null) {
+                probe.hostiles.move(entity.getId(), event.getNewPos().x(), event.getNewPos().z());
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (!event.getLevel().isClientSide() && event.getLevel() instanceof Level) {
+            LevelProbe probe = probeCaches.remove((Level) event.getLevel());
+            if (probe != null && probe.editor != null) {
+                probe.editor.restoreAll();
+            }
+        }
+    }
+
+    private static final class LevelProbe extends HorrorPlayerLogic.Dimension {
+        final FearWorldEditor editor; // null when world effects are off
+
+        LevelProbe(Level level) {
+            super(new EnvironmentProbeCache(HorrorConfig.PROBE_CACHE_MAX_AGE_TICKS.get()), new LevelBlockSampler(level));
+            this.cache.setCurrentTick(serverTicks);
+            this.editor = HorrorConfig.WORLD_EFFECTS_ENABLED.get() && level instanceof ServerLevel
+                ? new FearWorldEditor((ServerLevel) level, cache, sampler,
+                    HorrorConfig.WORLD_EFFECT_BLOCKS_PER_TICK.get(), HorrorConfig.WORLD_EFFECT_MAX_EDITS.get())
+                : null;
+        }
     }
     
+    // HorrorPlayerLogic's view of real players
+    private static final class ServerPlayers implements HorrorPlayerLogic.Host<ServerPlayer> {
+        @Override
+        public boolean isGone(ServerPlayer player) {
+            return TestEventHandler.isGone(player);
+        }
+
+        @Override
+        public long currentTick() {
+            return serverTicks;
+        }
+
+        @Override
+        public double getX(ServerPlayer player) {
+            return player.getX();
+        }
+
+        @Override
+        public double getY(ServerPlayer player) {
+            return player.getY();
+        }
+
+        @Override
+        public double getZ(ServerPlayer player) {
+            return player.getZ();
+        }
+
+        @Override
+        public HorrorPlayerLogic.Dimension dimensionOf(ServerPlayer player) {
+            return probeFor(player.level);
+        }
+
+        @Override
+        public void sampleBehavior(ServerPlayer player, PlayerBehaviorData data) {
+            data.updatePlayerBehavior(player);
+        }
+
+        @Override
+        public void onSampled(ServerPlayer player, PlayerSession session) {
+            FearEventJournal events = journal;
+            if (events != null && HorrorConfig.JOURNAL_SNAPSHOTS.get()) {
+                events.append(FearEventJournal.KIND_SNAPSHOT, player.getUUID(), session.getData().getSnapshot().features(), null, 0);
+            }
+        }
+
+        @Override
+        public void learnFear(ServerPlayer player, PlayerSession session, FearProfile.FearType fearType, double strength) {
+            HorrorPlayerLogic.learnFear(session, player.getUUID(), fearType, strength, trainingService, journal);
+        }
+
+        @Override
+        public void startWorldEffect(ServerPlayer player, PlayerSession session) {
+            TestEventHandler.startWorldEffect(player, session);
+        }
+
+        @Override
+        public void onPredicted(ServerPlayer player, FearProfile fearProfile) {
+            // The session may have moved to a new entity since the request
+            PlayerSession current = sessions.get(player.getUUID());
+            if (current != null) {
+                current.setLastProfile(fearProfile);
+            }
+            LOGGER.info("Player {}'s dominant fear: {}", player.getName().getString(), fearProfile.getDominantFear());
+            LOGGER.debug("Full fear profile: {}", fearProfile.getAllFearLevels());
+        }
+
+        @Override
+        public void onReaction(boolean fled) {
+            if (fled) {
+                threatFlights++;
+            } else {
+                threatStands++;
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onAttachCapabilities(AttachCapabilitiesEvent<Entity> event) {
+        if (event.getObject() instanceof ServerPlayer) {
+            event.addCapability(PlayerSession.Provider.ID, new PlayerSession.Provider());
+        }
+    }
+
+    // Respawning and leaving the End replace the ServerPlayer; the session moves to the new entity
+    @SubscribeEvent
+    public static void onPlayerClone(PlayerEvent.Clone event) {
+        if (!(event.getEntity() instanceof ServerPlayer)) {
+            return;
+        }
+        Player original = event.getOriginal();
+        // The old entity's capabilities were invalidated when it was removed
+        original.reviveCaps();
+        PlayerSession old = PlayerSession.get(original);
+        original.invalidateCaps();
+        PlayerSession session = PlayerSession.get(event.getEntity());
+        if (old != null && session != null) {
+            session.takeOver(old);
+            sessions.replace(event.getEntity().getUUID(), old, session);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        relocated(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        relocated(event.getEntity());
+    }
+
+    private static void relocated(Player player) {
+        PlayerSession session = PlayerSession.get(player);
+        if (session != null) {
+            session.relocated();
+        }
+    }
+
     @SubscribeEvent
     public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
         if (event.getEntity() instanceof ServerPlayer) {
             ServerPlayer player = (ServerPlayer) event.getEntity();
+            PlayerSession session = PlayerSession.get(player);
+            if (session == null) {
+                return;
+            }
             UUID playerUUID = player.getUUID();
             LOGGER.info("Player {} logged in. Initializing horror AI.", player.getName().getString());
-            playerDataMap.put(playerUUID, new PlayerBehaviorData());
-            AIFearLearner learner = new AIFearLearner();
-            learner.initialize();
-            fearLearnerMap.put(playerUUID, learner);
-            tickCounterMap.put(playerUUID, 0);
+            PlayerStateStore store = stateStore;
+            sessions.put(playerUUID, session);
+            if (store == null) {
+                session.restore(null);
+                createFearModel(playerUUID, session);
+                return;
+            }
+            // Read and parsed on the persistence thread; the player is left alone until it arrives
+            session.startLoading();
+            MinecraftServer server = player.getServer();
+            store.load(playerUUID).thenAccept(saved -> server.execute(() -> {
+                // The session may have moved to a new entity, or the player already left
+                PlayerSession current = sessions.get(playerUUID);
+                if (current != null && current.isLoading()) {
+                    current.restore(saved);
+                    createFearModel(playerUUID, current);
+                }
+            }));
         }
     }
 
@@ -170,10 +738,25 @@ public class TestEventHandler {
         if (event.getEntity() instanceof ServerPlayer) {
             ServerPlayer player = (ServerPlayer) event.getEntity();
             UUID playerUUID = player.getUUID();
-            LOGGER.info("Player {} logged out. Removing horror AI data.", player.getName().getString());
-            playerDataMap.remove(playerUUID);
-            fearLearnerMap.remove(playerUUID);
-            tickCounterMap.remove(playerUUID);
+            LOGGER.info("Player {} logged out. Saving and removing horror AI data.", player.getName().getString());
+            PlayerSession session = sessions.remove(playerUUID);
+            PlayerStateStore store = stateStore;
+            if (store != null && session != null) {
+                savePlayer(store, playerUUID, session);
+            }
+            for (LevelProbe probe : probeCaches.values()) {
+                if (probe.editor != null) {
+                    probe.editor.rollback(playerUUID);
+                }
+            }
+            LearnerTierManager tiers = tierManager;
+            if (tiers != null) {
+                tiers.remove(playerUUID);
+            }
+            profileCache.remove(playerUUID);
+            if (predictionScheduler != null) {
+                predictionScheduler.cancel(playerUUID);
+            }
         }
     }
 }
\ No newline at end of file
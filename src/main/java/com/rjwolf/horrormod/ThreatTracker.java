@@ -0,0 +1,189 @@
+package com.rjwolf.horrormod;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.util.List;
+
+// Follows the hostile mobs around one player between periodic scans. An encounter starts when a
+// mob comes within the detection radius and is resolved once: as a flight when the player's
+// movement since the previous scan points away from the mob, with the time from first sight as
+// the reaction time, or as a stand when the mob closes in or the player ignores it for a while.
+// New mobs are found through the dimension's shared HostileEntityIndex. A scan examines at most
+// maxEntities index entries and follows at most maxEntities encounters, so its cost does not grow
+// with the number of mobs loaded. Mobs are seen through Mob (EntityMob for live entities), so the
+// load test can run the same scans over stub mobs. Server thread only.
+public class ThreatTracker {
+    private static final double TICKS_PER_SECOND = 20.0;
+    private static final double FORGET_FACTOR = 1.5;     // encounters end beyond 1.5x the detection radius
+    private static final double VERTICAL_RANGE = 8.0;
+    private static final double MIN_FLEE_SPEED = 2.0;    // blocks per second, below walking pace
+    private static final double FLEE_ALIGNMENT = 0.7;    // cosine, within ~45 degrees of straight away
+    private static final double ENGAGED_DISTANCE = 2.5;  // a mob this close means the player stood their ground
+    private static final long GIVE_UP_TICKS = 200;       // no flight within 10 s counts as a stand
+
+    private final Int2ObjectOpenHashMap<Encounter> encounters = new Int2ObjectOpenHashMap<>();
+    private boolean hasLastPosition;
+    private double lastX;
+    private double lastZ;
+    private long lastTick;
+    private int scans;
+
+    // A hostile mob as the tracker sees it
+    public interface Mob {
+        int getId();
+
+        double getX();
+
+        double getY();
+
+        double getZ();
+
+        boolean isAlive();
+
+        // Records the player's reaction to this mob under the mob's type
+        void recordReaction(PlayerBehaviorData data, double reactionSeconds, boolean fled);
+    }
+
+    public interface ReactionSink {
+        void onReaction(Mob mob, double reactionSeconds, boolean fled);
+    }
+
+    // Scans the mobs around (x, y, z) and reports every encounter resolved by this scan
+    public int scan(HostileEntityIndex index, double x, double y, double z, long tick,
+                    double detectionRadius, int maxEntities, ReactionSink sink) {
+        // Player velocity over the interval since the previous scan, in blocks per second
+        double vx = 0;
+        double vz = 0;
+        if (hasLastPosition && tick > lastTick) {
+            double seconds = (tick - lastTick) / TICKS_PER_SECOND;
+            vx = (x - lastX) / seconds;
+            vz = (z - lastZ) / seconds;
+        }
+        hasLastPosition = true;
+        lastX = x;
+        lastZ = z;
+        lastTick = tick;
+        double speed = Math.sqrt(vx * vx + vz * vz);
+
+        // Discover mobs newly inside the detection radius from the shared per-chunk buckets, ring by
+        // ring outward from the player's own chunk, so a crowded chunk at the edge (a mob farm) cannot
+        // use up the budget before the mobs next to the player are seen. Mobs already followed are
+        // skipped without counting, and each scan starts a bucket at a different entry.
+        double detectSq = detectionRadius * detectionRadius;
+        int minChunkX = ((int) Math.floor(x - detectionRadius)) >> 4;
+        int maxChunkX = ((int) Math.floor(x + detectionRadius)) >> 4;
+        int minChunkZ = ((int) Math.floor(z - detectionRadius)) >> 4;
+        int maxChunkZ = ((int) Math.floor(z + detectionRadius)) >> 4;
+        int centerX = ((int) Math.floor(x)) >> 4;
+        int centerZ = ((int) Math.floor(z)) >> 4;
+        int rings = Math.max(Math.max(centerX - minChunkX, maxChunkX - centerX),
+            Math.max(centerZ - minChunkZ, maxChunkZ - centerZ));
+        int rotation = scans++;
+        int examined = 0;
+        discover:
+        for (int ring = 0; ring <= rings; ring++) {
+            for (int cx = centerX - ring; cx <= centerX + ring; cx++) {
+                // The ring's two edge columns in full, only its top and bottom chunk in between
+                int step = cx == centerX - ring || cx == centerX + ring ? 1 : 2 * ring;
+                for (int cz = centerZ - ring; cz <= centerZ + ring; cz += step) {
+                    if (cx < minChunkX || cx > maxChunkX || cz < minChunkZ || cz > maxChunkZ) {
+                        continue;
+                    }
+                    List<Mob> bucket = index.getChunk(cx, cz);
+                    if (bucket == null) {
+                        continue;
+                    }
+                    int size = bucket.size();
+                    int first = Math.floorMod(rotation, size);
+                    for (int i = 0; i < size; i++) {
+                        if (encounters.size() >= maxEntities) {
+                            break discover;
+                        }
+                        Mob mob = bucket.get((first + i) % size);
+                        if (encounters.containsKey(mob.getId())) {
+                            continue;
+                        }
+                        if (examined++ >= maxEntities) {
+                            break discover;
+                        }
+                        if (Math.abs(mob.getY() - y) > VERTICAL_RANGE) {
+                            continue;
+                        }
+                        double dx = x - mob.getX();
+                        double dz = z - mob.getZ();
+                        if (dx * dx + dz * dz <= detectSq) {
+                            encounters.put(mob.getId(), new Encounter(mob, tick));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Follow every open encounter through its own entity, which also covers attackers the
+        // index does not hold; mobs that died, despawned or fell behind end their encounter
+        double forgetRadius = detectionRadius * FORGET_FACTOR;
+        double forgetSq = forgetRadius * forgetRadius;
+        int resolved = 0;
+        ObjectIterator<Encounter> it = encounters.values().iterator();
+        while (it.hasNext()) {
+            Encounter encounter = it.next();
+            Mob mob = encounter.mob;
+            double dx = x - mob.getX();
+            double dz = z - mob.getZ();
+            double distSq = dx * dx + dz * dz;
+            if (!mob.isAlive() || distSq > forgetSq || Math.abs(mob.getY() - y) > VERTICAL_RANGE * FORGET_FACTOR) {
+                it.remove();
+            } else if (!encounter.resolved && resolve(encounter, dx, dz, distSq, vx, vz, speed, tick, sink)) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    // The player was hit by something; start an encounter if no scan noticed it yet
+    public void onAttacked(Mob attacker, long tick) {
+        if (!encounters.containsKey(attacker.getId())) {
+            encounters.put(attacker.getId(), new Encounter(attacker, tick));
+        }
+    }
+
+    // The player moved elsewhere at once (respawn, dimension change): forget the old surroundings
+    public void reset() {
+        encounters.clear();
+        hasLastPosition = false;
+    }
+
+    public int getEncounterCount() {
+        return encounters.size();
+    }
+
+    private static boolean resolve(Encounter encounter, double awayX, double awayZ, double distSq,
+                                   double vx, double vz, double speed, long tick, ReactionSink sink) {
+        double seconds = (tick - encounter.firstSeenTick) / TICKS_PER_SECOND;
+        double distance = Math.sqrt(distSq);
+        if (speed >= MIN_FLEE_SPEED && distance > 0
+                && (vx * awayX + vz * awayZ) / (speed * distance) > FLEE_ALIGNMENT) {
+            encounter.resolved = true;
+            sink.onReaction(encounter.mob, seconds, true);
+            return true;
+        }
+        if (distance <= ENGAGED_DISTANCE || tick - encounter.firstSeenTick >= GIVE_UP_TICKS) {
+            encounter.resolved = true;
+            sink.onReaction(encounter.mob, seconds, false);
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Encounter {
+        final Mob mob;
+        final long firstSeenTick;
+        boolean resolved;
+
+        Encounter(Mob mob, long firstSeenTick) {
+            this.mob = mob;
+            this.firstSeenTick = firstSeenTick;
+        }
+    }
+}
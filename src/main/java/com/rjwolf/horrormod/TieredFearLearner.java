@@ -0,0 +1,245 @@
+package com.rjwolf.horrormod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// An AIFearLearner that can be demoted to a compact cold form while its player is idle.
+// Hot: the full DL4J network with gradients and Adam state. Cold: only the immutable
+// FastFearNetwork used for inference plus the serialized training state, optionally without the
+// Adam moments and/or rounded to bfloat16. The next fit promotes it back onto a learner from
+// the pool. Saves use the AIFearLearner state kind, so tiering does not affect the save format.
+// Predictions never promote: a cold learner predicts from its exported weights on either backend.
+public class TieredFearLearner implements FearModel {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Supplier<AIFearLearner> learnerSource;
+    // Held by fit, loadState and demote only; predictions, saves and memory estimates never wait on a fit
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Written under lock. Promote publishes hot before clearing cold and demote publishes cold
+    // before clearing hot, so a reader always finds at least one of them on a retry.
+    private volatile AIFearLearner hot;
+    private volatile Cold cold;
+
+    private volatile long memoryBytes;
+    private volatile long lastUsedNanos = System.nanoTime();
+    private volatile long modelVersion;
+
+    TieredFearLearner(AIFearLearner hot, Supplier<AIFearLearner> learnerSource) {
+        this.hot = hot;
+        this.learnerSource = learnerSource;
+        this.memoryBytes = hot.estimateMemoryBytes();
+    }
+
+    @Override
+    public void fit(double[][] features, double[][] labels) {
+        lock.lock();
+        try {
+            lastUsedNanos = System.nanoTime();
+            AIFearLearner learner = promote();
+            if (learner != null) {
+                learner.fit(features, labels);
+                modelVersion++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public FearProfile predictPlayerFears(PlayerBehaviorData data) {
+        // Immutable exported weights, no lock. Cold learners use them whatever the backend, so a
+        // prediction never loads a learner back from the pool on the server thread.
+        Cold c = cold;
+        AIFearLearner learner = hot;
+        FastFearNetwork fast = c != null ? c.network
+            : learner != null && FastFearNetwork.isEnabled() ? learner.getFastNetwork() : null;
+        if (fast != null) {
+            return predict(fast, data);
+        }
+        // ND4J backend on a hot learner: needs the live network, which demote closes, so hold the lock
+        lock.lock();
+        try {
+            learner = hot;
+            if (learner != null) {
+                return learner.predictPlayerFears(data);
+            }
+            // Demoted while this thread waited
+            return predict(cold.network, data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FearProfile predict(FastFearNetwork fast, PlayerBehaviorData data) {
+        float[] levels = new float[AIFearLearner.FEAR_CATEGORIES];
+        fast.predict(data, levels);
+        return new FearProfile(levels);
+    }
+
+    // Server thread. Skips learners a training worker is using right now, as they are not idle.
+    boolean demote(boolean keepUpdaterState, boolean quantize) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            AIFearLearner learner = hot;
+            if (learner == null) {
+                return false;
+            }
+            byte[] state = learner.saveState();
+            if (!keepUpdaterState) {
+                state = withoutUpdaterState(state);
+            }
+            Cold demoted = new Cold(quantize ? toBfloat16(state) : state, quantize, learner.getFastNetwork());
+            cold = demoted;
+            hot = null;
+            memoryBytes = demoted.state.length + 4L * demoted.network.getParameterCount();
+            // Frees the parameters, gradients and Adam moments held off-heap
+            learner.close();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    public boolean isHot() {
+        return cold == null;
+    }
+
+    long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    // As of the last promote or demote
+    @Override
+    public long estimateMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public byte stateKind() {
+        return AIFearLearner.STATE_KIND;
+    }
+
+    // Writer thread. Waits for an in-flight fit on the learner's own monitor, never for the lock.
+    @Override
+    public byte[] saveState() {
+        while (true) {
+            Cold c = cold;
+            if (c != null) {
+                return c.quantized ? fromBfloat16(c.state) : c.state.clone();
+            }
+            AIFearLearner learner = hot;
+            byte[] state = learner != null ? learner.saveStateIfOpen() : null;
+            if (state != null) {
+                return state;
+            }
+            // Demoted between the two reads; the cold form is published now
+        }
+    }
+
+    @Override
+    public boolean loadState(ByteBuffer in) {
+        lock.lock();
+        try {
+            AIFearLearner learner = promote();
+            if (learner == null || !learner.loadState(in)) {
+                return false;
+            }
+            modelVersion++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock. Returns null if the pool has not finished warming up, or if the cold state
+    // could not be loaded; the learner then stays cold rather than training from scratch.
+    private AIFearLearner promote() {
+        AIFearLearner current = hot;
+        if (current != null) {
+            return current;
+        }
+        AIFearLearner learner = learnerSource.get();
+        if (learner == null) {
+            return null;
+        }
+        Cold c = cold;
+        byte[] state = c.quantized ? fromBfloat16(c.state) : c.state;
+        // A state without Adam moments keeps the fresh learner's updater state
+        if (!learner.loadState(ByteBuffer.wrap(state))) {
+            LOGGER.error("Could not load a demoted fear model's state; keeping it cold");
+            learner.close();
+            return null;
+        }
+        if (c.quantized) {
+            // Rounded weights predict slightly differently from the exported cold network
+            modelVersion++;
+        }
+        hot = learner;
+        cold = null;
+        memoryBytes = learner.estimateMemoryBytes();
+        return learner;
+    }
+
+    // Immutable once published: the serialized training state plus the weights cold predictions use
+    private static final class Cold {
+        final byte[] state;
+        final boolean quantized;
+        final FastFearNetwork network;
+
+        Cold(byte[] state, boolean quantized, FastFearNetwork network) {
+            this.state = state;
+            this.quantized = quantized;
+            this.network = network;
+        }
+    }
+
+    // NetworkState layout: int paramCount, float[paramCount], int updaterCount, float[updaterCount]
+    private static byte[] withoutUpdaterState(byte[] state) {
+        ByteBuffer in = ByteBuffer.wrap(state);
+        int paramCount = in.getInt();
+        ByteBuffer out = ByteBuffer.allocate(8 + 4 * paramCount);
+        out.putInt(paramCount);
+        out.put(state, 4, 4 * paramCount);
+        out.putInt(0);
+        return out.array();
+    }
+
+    // Keeps the top 16 bits of every float (sign, exponent, 7 mantissa bits), rounded to nearest even
+    private static byte[] toBfloat16(byte[] state) {
+        ByteBuffer in = ByteBuffer.wrap(state);
+        ByteBuffer out = ByteBuffer.allocate(8 + (state.length - 8) / 2);
+        for (int block = 0; block < 2; block++) {
+            int count = in.getInt();
+            out.putInt(count);
+            for (int i = 0; i < count; i++) {
+                int bits = in.getInt();
+                out.putShort((short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16));
+            }
+        }
+        return out.array();
+    }
+
+    private static byte[] fromBfloat16(byte[] quantized) {
+        ByteBuffer in = ByteBuffer.wrap(quantized);
+        ByteBuffer out = ByteBuffer.allocate(8 + 2 * (quantized.length - 8));
+        for (int block = 0; block < 2; block++) {
+            int count = in.getInt();
+            out.putInt(count);
+            for (int i = 0; i < count; i++) {
+                out.putInt((in.getShort() & 0xFFFF) << 16);
+            }
+        }
+        return out.array();
+    }
+}
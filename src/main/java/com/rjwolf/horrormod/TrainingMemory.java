@@ -0,0 +1,147 @@
+package com.rjwolf.horrormod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Off-heap memory used by training. Each training thread copies its mini-batches into one pair of
+// preallocated feature/label matrices instead of creating new INDArrays per fit; the matrices grow
+// to the largest batch the thread has seen and a smaller batch is fitted through a row view.
+// Activations and gradients live in DL4J's training workspaces (enabled in
+// AIFearLearner.buildConfiguration), which are also per thread and reused once sized.
+// The off-heap limit is JavaCPP's allocator cap, so it has to be set before ND4J first loads.
+final class TrainingMemory {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String MAX_BYTES_PROPERTY = "org.bytedeco.javacpp.maxbytes";
+    private static final ThreadLocal<TrainingMemory> CURRENT = ThreadLocal.withInitial(TrainingMemory::new);
+    private static final LongAccumulator WORKSPACE_PEAK = new LongAccumulator(Math::max, 0L);
+    private static final LongAccumulator OFF_HEAP_PEAK = new LongAccumulator(Math::max, 0L);
+
+    private final DataSet dataSet = new DataSet();
+    private INDArray features;
+    private INDArray labels;
+    private float[] featureStaging;
+    private float[] labelStaging;
+    private int capacity;
+
+    private TrainingMemory() {
+    }
+
+    static TrainingMemory forCurrentThread() {
+        return CURRENT.get();
+    }
+
+    // Call before anything touches ND4J. limitMb <= 0 keeps JavaCPP's default (the heap size),
+    // and a limit given on the command line always wins.
+    static void applyOffHeapLimit(long limitMb) {
+        if (limitMb <= 0) {
+            return;
+        }
+        if (System.getProperty(MAX_BYTES_PROPERTY) != null) {
+            LOGGER.info("Off-heap limit set by -D{}={}, ignoring training.offHeapLimitMb",
+                MAX_BYTES_PROPERTY, System.getProperty(MAX_BYTES_PROPERTY));
+            return;
+        }
+        System.setProperty(MAX_BYTES_PROPERTY, limitMb + "m");
+    }
+
+    // Logs the limit JavaCPP actually uses; it is not the configured one if ND4J loaded earlier
+    static void logOffHeapLimit(long limitMb) {
+        long effectiveMb = Pointer.maxBytes() / 1024 / 1024;
+        if (limitMb > 0 && effectiveMb != limitMb && (limitMb + "m").equals(System.getProperty(MAX_BYTES_PROPERTY))) {
+            LOGGER.warn("training.offHeapLimitMb={} was applied after ND4J loaded; the effective limit is {} MiB",
+                limitMb, effectiveMb);
+        } else {
+            LOGGER.info("Off-heap limit for ND4J: {} MiB", effectiveMb);
+        }
+    }
+
+    // Copies a mini-batch into this thread's buffers. The returned DataSet is reused by the next
+    // call on the same thread, so fit it before loading another batch.
+    DataSet load(double[][] featureRows, double[][] labelRows) {
+        int rows = featureRows.length;
+        int featureColumns = featureRows[0].length;
+        int labelColumns = labelRows[0].length;
+        ensureCapacity(rows, featureColumns, labelColumns);
+        copyRows(featureRows, featureStaging, featureColumns);
+        copyRows(labelRows, labelStaging, labelColumns);
+        features.data().setData(featureStaging);
+        labels.data().setData(labelStaging);
+        if (rows == capacity) {
+            dataSet.setFeatures(features);
+            dataSet.setLabels(labels);
+        } else {
+            dataSet.setFeatures(features.get(NDArrayIndex.interval(0, rows), NDArrayIndex.all()));
+            dataSet.setLabels(labels.get(NDArrayIndex.interval(0, rows), NDArrayIndex.all()));
+        }
+        return dataSet;
+    }
+
+    private void ensureCapacity(int rows, int featureColumns, int labelColumns) {
+        if (features != null && rows <= capacity
+            && features.columns() == featureColumns && labels.columns() == labelColumns) {
+            return;
+        }
+        capacity = Math.max(rows, capacity * 2);
+        // Outside any workspace: the buffers outlive every fit
+        try (MemoryWorkspace ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            features = Nd4j.create(DataType.FLOAT, capacity, featureColumns);
+            labels = Nd4j.create(DataType.FLOAT, capacity, labelColumns);
+        }
+        featureStaging = new float[capacity * featureColumns];
+        labelStaging = new float[capacity * labelColumns];
+    }
+
+    private static void copyRows(double[][] rows, float[] staging, int columns) {
+        for (int r = 0; r < rows.length; r++) {
+            double[] row = rows[r];
+            int offset = r * columns;
+            for (int c = 0; c < columns; c++) {
+                staging[offset + c] = (float) row[c];
+            }
+        }
+    }
+
+    // True if JavaCPP threw this because an off-heap allocation would exceed its limit or physical
+    // memory, as opposed to the Java heap being exhausted
+    static boolean isOffHeapLimit(OutOfMemoryError e) {
+        String message = e.getMessage();
+        return message != null && (message.startsWith("Failed to allocate memory within limits")
+            || message.startsWith("Cannot allocate") || message.startsWith("Physical memory usage is too high"));
+    }
+
+    // Samples this thread's workspace sizes and the process-wide off-heap total after a fit
+    static void recordUsage() {
+        long workspaceBytes = 0;
+        for (MemoryWorkspace workspace : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            workspaceBytes += workspace.getCurrentSize();
+        }
+        WORKSPACE_PEAK.accumulate(workspaceBytes);
+        OFF_HEAP_PEAK.accumulate(Pointer.totalBytes());
+    }
+
+    // Largest workspace footprint of any single training thread
+    static long getWorkspacePeakBytes() {
+        return WORKSPACE_PEAK.get();
+    }
+
+    static long getOffHeapPeakBytes() {
+        return OFF_HEAP_PEAK.get();
+    }
+
+    static long getOffHeapBytes() {
+        return Pointer.totalBytes();
+    }
+
+    static long getOffHeapLimitBytes() {
+        return Pointer.maxBytes();
+    }
+}
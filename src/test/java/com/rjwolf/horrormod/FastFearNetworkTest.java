@@ -0,0 +1,91 @@
+package com.rjwolf.horrormod;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The Java forward pass must match ND4J on a trained network, not just on freshly initialized
+// weights: training pushes hidden pre-activations negative, which is where a missed ReLU shows.
+class FastFearNetworkTest {
+    // Default of HorrorConfig.INFERENCE_TOLERANCE
+    private static final double TOLERANCE = 1.0e-4;
+
+    private static AIFearLearner learner;
+    private static MultiLayerNetwork network;
+    private static FastFearNetwork fast;
+
+    @BeforeAll
+    static void train() {
+        learner = new AIFearLearner();
+        learner.initialize();
+        Random random = new Random(7);
+        for (int batch = 0; batch < 50; batch++) {
+            double[][] features = randomRows(random, 32, 10.0);
+            double[][] labels = new double[32][AIFearLearner.FEAR_CATEGORIES];
+            for (double[] label : labels) {
+                label[random.nextInt(AIFearLearner.FEAR_CATEGORIES)] = 1.0;
+            }
+            learner.fit(features, labels);
+        }
+        network = learner.cloneNetwork();
+        fast = learner.getFastNetwork();
+    }
+
+    @AfterAll
+    static void close() {
+        network.close();
+        learner.close();
+    }
+
+    @Test
+    void predictMatchesNd4j() {
+        double deviation = FastFearNetwork.maxDeviation(network, fast, 256, 10.0);
+        assertTrue(deviation <= TOLERANCE, "Java prediction deviates from ND4J by " + deviation);
+    }
+
+    @Test
+    void embedBatchMatchesNd4jHiddenLayer() {
+        Random random = new Random(11);
+        // Negative inputs too, so the first layer's pre-activations are often negative
+        double[][] inputs = randomRows(random, 37, 10.0);
+        for (int r = 0; r < inputs.length; r += 2) {
+            for (int i = 0; i < inputs[r].length; i++) {
+                inputs[r][i] -= 10.0;
+            }
+        }
+        int rows = inputs.length;
+        float[][] actual = new float[rows][AIFearLearner.HIDDEN_2];
+        fast.embedBatch(inputs, rows, actual);
+        // Activations after input, layer 0 and layer 1: the last is what embedBatch returns
+        float[][] expected = network.feedForward(Nd4j.create(inputs), false).get(2).toFloatMatrix();
+
+        float[] single = new float[AIFearLearner.HIDDEN_2];
+        double worst = 0;
+        for (int r = 0; r < rows; r++) {
+            fast.embed(inputs[r], single);
+            for (int j = 0; j < AIFearLearner.HIDDEN_2; j++) {
+                // Unlike the softmax output, activations are unbounded, so compare relative to their size
+                double scale = Math.max(1.0, Math.abs(expected[r][j]));
+                worst = Math.max(worst, Math.abs(expected[r][j] - actual[r][j]) / scale);
+                worst = Math.max(worst, Math.abs(single[j] - actual[r][j]) / scale);
+            }
+        }
+        assertTrue(worst <= TOLERANCE, "Batched embedding deviates by " + worst + " (relative)");
+    }
+
+    private static double[][] randomRows(Random random, int rows, double scale) {
+        double[][] out = new double[rows][AIFearLearner.INPUT_FEATURES];
+        for (double[] row : out) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = random.nextDouble() * scale;
+            }
+        }
+        return out;
+    }
+}